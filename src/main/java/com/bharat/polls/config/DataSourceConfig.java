@@ -0,0 +1,80 @@
+package com.bharat.polls.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The application DataSource: the primary pool from spring.datasource.*, plus one read-only pool per URL in
+ * app.datasource.replicaUrls, routed by {@link ReplicaRoutingDataSource}. Without replica URLs every connection
+ * goes to the primary as before.
+ */
+@Configuration
+public class DataSourceConfig {
+
+    @Value("${app.datasource.replicaUrls}")
+    private String[] replicaUrls;
+
+    @Value("${app.datasource.replicaUsername:${spring.datasource.username}}")
+    private String replicaUsername;
+
+    @Value("${app.datasource.replicaPassword:${spring.datasource.password}}")
+    private String replicaPassword;
+
+    @Value("${app.datasource.maxReplicaLagSeconds}")
+    private int maxReplicaLagSeconds;
+
+    private final List<HikariDataSource> pools = new ArrayList<>();
+
+    private ReplicaRoutingDataSource routingDataSource;
+
+    @Bean
+    public DataSource dataSource(DataSourceProperties properties){
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        primary.setPoolName("primary");
+        pools.add(primary);
+
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for(String url : replicaUrls){
+            if(!StringUtils.hasText(url)){
+                continue;
+            }
+            String name = "replica-"+replicas.size();
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName(name);
+            replica.setDriverClassName(properties.determineDriverClassName());
+            replica.setJdbcUrl(url.trim());
+            replica.setUsername(replicaUsername);
+            replica.setPassword(replicaPassword);
+            replica.setReadOnly(true);
+            pools.add(replica);
+            replicas.put(name,replica);
+        }
+
+        routingDataSource = new ReplicaRoutingDataSource(primary,replicas);
+        routingDataSource.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    @Scheduled(fixedDelayString = "${app.datasource.replicaHealthCheckMs}")
+    public void checkReplicas(){
+        routingDataSource.checkReplicas(maxReplicaLagSeconds);
+    }
+
+    @PreDestroy
+    void close(){
+        pools.forEach(HikariDataSource::close);
+    }
+}
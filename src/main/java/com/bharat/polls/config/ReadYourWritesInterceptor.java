@@ -0,0 +1,45 @@
+package com.bharat.polls.config;
+
+import com.bharat.polls.security.UserPrincipal;
+import com.bharat.polls.service.ReadYourWritesService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Pins requests of users who have just written something to the primary database, and releases every request
+ * thread's pin when the request is done with it.
+ */
+@Component
+public class ReadYourWritesInterceptor implements AsyncHandlerInterceptor {
+
+    @Autowired
+    private ReadYourWritesService readYourWritesService;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if(authentication != null && authentication.getPrincipal() instanceof UserPrincipal){
+            UserPrincipal userPrincipal = (UserPrincipal) authentication.getPrincipal();
+            if(readYourWritesService.isRecentWriter(userPrincipal.getId())){
+                ReplicaRoutingDataSource.pinToPrimary();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        ReplicaRoutingDataSource.unpin();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        ReplicaRoutingDataSource.unpin();
+    }
+}
@@ -0,0 +1,179 @@
+package com.bharat.polls.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Sends connections for read-only transactions to one of the healthy replicas, round robin, and everything else
+ * (writable transactions, statements outside a transaction) to the primary.
+ *
+ * The decision is made when a connection is first used, so this must sit behind a LazyConnectionDataSourceProxy:
+ * the transaction managers fetch their connection before the transaction is marked read-only.
+ *
+ * A thread can be pinned to the primary, e.g. for the rest of a request after its user has written something, so
+ * that it reads its own writes no matter how far the replicas lag. Replicas are assumed healthy until the first
+ * {@link #checkReplicas(int)}; while none is healthy, reads go to the primary.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    public static final String PRIMARY = "primary";
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private static final ThreadLocal<Boolean> pinnedToPrimary = new ThreadLocal<>();
+
+    // set while the thread's transaction holds a replica connection
+    private static final ThreadLocal<Boolean> transactionOnReplica = new ThreadLocal<>();
+
+    private final Map<String, DataSource> replicas;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private volatile List<String> healthyReplicas;
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas) {
+        this.replicas = replicas;
+        this.healthyReplicas = Collections.unmodifiableList(new ArrayList<>(replicas.keySet()));
+
+        Map<Object, Object> targets = new HashMap<>(replicas);
+        targets.put(PRIMARY,primary);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+    }
+
+    /**
+     * Sends every connection this thread opens from now on to the primary, until {@link #unpin()}.
+     */
+    public static void pinToPrimary(){
+        pinnedToPrimary.set(Boolean.TRUE);
+    }
+
+    public static void unpin(){
+        pinnedToPrimary.remove();
+    }
+
+    /**
+     * Runs the given reads against the primary, for callers that cannot work with a lagging copy. Like the pin, this
+     * only affects connections obtained while it runs, not one a surrounding transaction already holds.
+     */
+    public static <T> T onPrimary(Supplier<T> reads){
+        if(pinnedToPrimary.get() != null){
+            return reads.get();
+        }
+        pinToPrimary();
+        try {
+            return reads.get();
+        } finally {
+            unpin();
+        }
+    }
+
+    /**
+     * @return whether the current transaction has its connection from a replica, so that reads that must see the
+     * primary need a transaction (and connection) of their own
+     */
+    public static boolean isTransactionOnReplica(){
+        return transactionOnReplica.get() != null;
+    }
+
+    public List<String> getHealthyReplicas() {
+        return healthyReplicas;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if(pinnedToPrimary.get() != null || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()){
+            return PRIMARY;
+        }
+        List<String> candidates = healthyReplicas;
+        if(candidates.isEmpty()){
+            return PRIMARY;
+        }
+        markTransactionOnReplica();
+        return candidates.get(Math.floorMod(next.getAndIncrement(),candidates.size()));
+    }
+
+    private static void markTransactionOnReplica(){
+        if(transactionOnReplica.get() != null || !TransactionSynchronizationManager.isSynchronizationActive()){
+            return;
+        }
+        transactionOnReplica.set(Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                transactionOnReplica.remove();
+            }
+        });
+    }
+
+    /**
+     * Validates a connection of every replica and, if maxLagSeconds is positive, checks how far behind the primary
+     * it is; replicas that fail either check get no reads until a later check passes.
+     */
+    public void checkReplicas(int maxLagSeconds){
+        if(replicas.isEmpty()){
+            return;
+        }
+        List<String> healthy = new ArrayList<>(replicas.size());
+        replicas.forEach((key,replica) -> {
+            String problem = check(replica,maxLagSeconds);
+            boolean wasHealthy = healthyReplicas.contains(key);
+            if(problem == null){
+                healthy.add(key);
+                if(!wasHealthy){
+                    logger.info("Replica {} is healthy again",key);
+                }
+            } else if(wasHealthy){
+                logger.warn("Taking replica {} out of rotation: {}",key,problem);
+            }
+        });
+        healthyReplicas = Collections.unmodifiableList(healthy);
+    }
+
+    private static String check(DataSource replica, int maxLagSeconds){
+        try (Connection connection = replica.getConnection()){
+            if(!connection.isValid(VALIDATION_TIMEOUT_SECONDS)){
+                return "connection is not valid";
+            }
+            if(maxLagSeconds <= 0){
+                return null;
+            }
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery("SHOW SLAVE STATUS")){
+                if(!rs.next()){
+                    return "not replicating";
+                }
+//                null while the replication threads are stopped
+                long lag = rs.getLong("Seconds_Behind_Master");
+                if(rs.wasNull()){
+                    return "replication is stopped";
+                }
+                if(lag > maxLagSeconds){
+                    return lag+" seconds behind the primary";
+                }
+            }
+            return null;
+        } catch (SQLException ex){
+            return ex.getMessage();
+        }
+    }
+}
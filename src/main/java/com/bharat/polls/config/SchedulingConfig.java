@@ -0,0 +1,19 @@
+package com.bharat.polls.config;
+
+import org.springframework.boot.task.TaskSchedulerBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+
+    // @EnableWebSocket declares a (null) defaultSockJsTaskScheduler, which makes Boot skip its own scheduler and
+    // leaves @Scheduled with nothing to run on; this one is built from spring.task.scheduling.* as Boot's would be
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler(TaskSchedulerBuilder builder){
+        return builder.build();
+    }
+}
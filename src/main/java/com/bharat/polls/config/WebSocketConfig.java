@@ -0,0 +1,27 @@
+package com.bharat.polls.config;
+
+import com.bharat.polls.controller.PollResultsSocketHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    @Autowired
+    private PollResultsSocketHandler pollResultsSocketHandler;
+
+    // WebSocket handshakes are not covered by CORS; only pages from these origins may open the socket
+    @Value("${app.stream.allowedOrigins}")
+    private String[] allowedOrigins;
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(pollResultsSocketHandler,"/api/polls/live")
+                .setAllowedOrigins(allowedOrigins);
+    }
+}
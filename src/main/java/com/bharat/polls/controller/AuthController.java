@@ -11,6 +11,7 @@ import com.bharat.polls.payload.SignUpRequest;
 import com.bharat.polls.repository.RoleRepository;
 import com.bharat.polls.repository.UserRepository;
 import com.bharat.polls.security.JwtTokenProvider;
+import com.bharat.polls.service.UserIdentityIndex;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -48,6 +49,9 @@ public class AuthController {
     @Autowired
     JwtTokenProvider tokenProvider;
 
+    @Autowired
+    UserIdentityIndex userIdentityIndex;
+
     @PostMapping("/signin")
     public ResponseEntity<?> authenticateUser(@Valid @RequestBody LoginRequest loginRequest){
 
@@ -77,6 +81,7 @@ public class AuthController {
         user.setRoles(Collections.singleton(userRole));
 
         User result = userRepository.save(user);
+        userIdentityIndex.registered(result.getUsername(),result.getEmail());
 
         /* <p> URIComponent builder
             It helps to create UriComponent instances by providing fine-grained control over all the aspects of preparing
@@ -0,0 +1,68 @@
+package com.bharat.polls.controller;
+
+import com.bharat.polls.exceptions.BadRequestException;
+import com.bharat.polls.payload.PollResultsSubscription;
+import com.bharat.polls.service.PollResultsBroadcaster;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+
+/**
+ * WebSocket endpoint for results dashboards, mapped in {@link com.bharat.polls.config.WebSocketConfig}.
+ *
+ * A client sends {"subscribe":[1,2,3]} or {"unsubscribe":[2]} at any time. For every newly watched poll it gets a
+ * "results" frame with the full counts, then "delta" frames with the votes to add per choice, at most once per
+ * broadcast tick. Malformed messages close the connection.
+ */
+@Component
+public class PollResultsSocketHandler extends TextWebSocketHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(PollResultsSocketHandler.class);
+
+    @Autowired
+    private PollResultsBroadcaster pollResultsBroadcaster;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        pollResultsBroadcaster.register(session);
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws IOException {
+        PollResultsSubscription subscription;
+        try {
+            subscription = objectMapper.readValue(message.getPayload(),PollResultsSubscription.class);
+        } catch (IOException ex){
+            logger.debug("Closing live results socket {} after a malformed message",session.getId());
+            session.close(CloseStatus.BAD_DATA);
+            return;
+        }
+
+        try {
+            if(subscription.getUnsubscribe() != null){
+                pollResultsBroadcaster.unsubscribe(session,subscription.getUnsubscribe());
+            }
+            if(subscription.getSubscribe() != null){
+                pollResultsBroadcaster.subscribe(session,subscription.getSubscribe());
+            }
+        } catch (BadRequestException ex){
+            session.close(CloseStatus.POLICY_VIOLATION.withReason(ex.getMessage()));
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        pollResultsBroadcaster.unregister(session);
+    }
+}
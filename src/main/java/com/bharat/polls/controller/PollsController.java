@@ -7,18 +7,31 @@ import com.bharat.polls.repository.UserRepository;
 import com.bharat.polls.repository.VoteRepository;
 import com.bharat.polls.security.CurrentUser;
 import com.bharat.polls.security.UserPrincipal;
+import com.bharat.polls.service.BulkVoteService;
+import com.bharat.polls.service.FeedSnapshotService;
+import com.bharat.polls.service.PollResultsBroadcaster;
 import com.bharat.polls.service.PollService;
+import com.bharat.polls.service.VoteExportService;
+import com.bharat.polls.service.VoteIdempotencyService;
 import com.bharat.polls.util.AppConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
+import java.io.IOException;
 import java.net.URI;
+import java.util.List;
 
 @RestControllerAdvice
 @RequestMapping("/api/polls")
@@ -36,13 +49,89 @@ public class PollsController {
     @Autowired
     private PollService pollService;
 
+    @Autowired
+    private BulkVoteService bulkVoteService;
+
+    @Autowired
+    private VoteIdempotencyService voteIdempotencyService;
+
+    @Autowired
+    private PollResultsBroadcaster pollResultsBroadcaster;
+
+    @Autowired
+    private FeedSnapshotService feedSnapshotService;
+
+    @Autowired
+    private VoteExportService voteExportService;
+
     private static final Logger logger = LoggerFactory.getLogger(PollsController.class);
 
     @GetMapping
-    public PagedResponse<PollResponse> getPolls(@CurrentUser UserPrincipal currentUser,
-                                                @RequestParam(value="page",defaultValue = AppConstants.DEFAULT_PAGE_NUMBER) int page,
-                                                @RequestParam(value = "size", defaultValue = AppConstants.DEFAULT_PAGE_SIZE) int size){
-        return pollService.getAllPolls(currentUser,page,size);
+    public ResponseEntity<?> getPolls(@CurrentUser UserPrincipal currentUser,
+                                      @RequestParam(value="page",defaultValue = AppConstants.DEFAULT_PAGE_NUMBER) int page,
+                                      @RequestParam(value = "size", defaultValue = AppConstants.DEFAULT_PAGE_SIZE) int size,
+                                      WebRequest webRequest){
+//        anonymous hits on the first pages get the pre-rendered bytes; a matching If-None-Match turns into a 304
+        FeedSnapshotService.FeedPage snapshot = currentUser == null ? feedSnapshotService.getPage(page,size) : null;
+        if(snapshot != null){
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).eTag(snapshot.getETag()).body(snapshot.getJson());
+        }
+
+        PollService.FeedPageIds feedPage = pollService.getFeedPage(currentUser,page,size);
+        if(webRequest.checkNotModified(feedPage.getETag())){
+            return null;
+        }
+        return ResponseEntity.ok(pollService.getAllPolls(currentUser,feedPage));
+    }
+
+    /**
+     * Keyset-paginated feed. Start with an empty cursor and pass each response's nextCursor to get the next page.
+     */
+    @GetMapping(params = {"cursor", "!ids"})
+    public CursorPagedResponse<PollResponse> getPolls(@CurrentUser UserPrincipal currentUser,
+                                                      @RequestParam(value = "cursor") String cursor,
+                                                      @RequestParam(value = "size", defaultValue = AppConstants.DEFAULT_PAGE_SIZE) int size,
+                                                      WebRequest webRequest){
+        PollService.FeedPageIds feedPage = pollService.getFeedPage(currentUser,cursor,size);
+        if(webRequest.checkNotModified(feedPage.getETag())){
+            return null;
+        }
+        return pollService.getAllPollsAfter(currentUser,feedPage);
+    }
+
+    /**
+     * Up to AppConstants.MAX_POLLS_BY_ID polls by id (ids=1,2,3), in the order asked for; unknown ids are listed in
+     * missingIds.
+     */
+    @GetMapping(params = {"ids", "!cursor"})
+    public PollsByIdResponse getPollsById(@CurrentUser UserPrincipal currentUser,
+                                          @RequestParam(value = "ids") List<Long> pollIds,
+                                          WebRequest webRequest){
+        if(webRequest.checkNotModified(pollService.getPollsByIdETag(pollIds,currentUser))){
+            return null;
+        }
+        return pollService.getPollsById(pollIds,currentUser);
+    }
+
+    /**
+     * Open polls with the most votes lately, hottest first. The ranking is refreshed every second.
+     */
+    @GetMapping("/trending")
+    public List<PollResponse> getTrendingPolls(@CurrentUser UserPrincipal currentUser,
+                                               @RequestParam(value = "size", defaultValue = AppConstants.DEFAULT_TRENDING_SIZE) int size){
+        return pollService.getTrendingPolls(currentUser,size);
+    }
+
+    /**
+     * Polls whose question or choices contain every word of q, best match first. Pass each response's nextCursor
+     * to get the next page.
+     */
+    @GetMapping("/search")
+    public CursorPagedResponse<PollResponse> searchPolls(@CurrentUser UserPrincipal currentUser,
+                                                         @RequestParam(value = "q") String query,
+                                                         @RequestParam(value = "cursor", defaultValue = "") String cursor,
+                                                         @RequestParam(value = "size", defaultValue = AppConstants.DEFAULT_PAGE_SIZE) int size){
+        return pollService.searchPolls(currentUser,query,cursor,size);
     }
 
     @PostMapping
@@ -55,8 +144,24 @@ public class PollsController {
         return ResponseEntity.created(location).body(new ApiResponse(true,"Poll Created Successfully"));
     }
 
+    /**
+     * Creates a batch of polls at once, for editorial imports. Each poll is validated on its own; the response
+     * reports the id of every created poll and the reason every other one was rejected.
+     */
+    @PostMapping("/bulk")
+    @PreAuthorize("hasRole('ADMIN')")
+    public BulkPollResponse createPolls(@RequestBody List<PollRequest> pollRequests){
+        return pollService.createPolls(pollRequests);
+    }
+
+    /**
+     * Answers If-None-Match requests with 304 from the poll's in-memory version, without loading the poll.
+     */
     @GetMapping("/{pollId}")
-    public PollResponse getPollById(@CurrentUser UserPrincipal currentUser, @PathVariable Long pollId){
+    public PollResponse getPollById(@CurrentUser UserPrincipal currentUser, @PathVariable Long pollId, WebRequest webRequest){
+        if(webRequest.checkNotModified(pollService.getPollETag(pollId,currentUser))){
+            return null;
+        }
         return pollService.getPollById(pollId,currentUser);
     }
 
@@ -64,8 +169,51 @@ public class PollsController {
     @PreAuthorize("hasRole('USER')")
     public PollResponse castVote(@CurrentUser UserPrincipal currentUser,
                                  @PathVariable Long pollId,
-                                 @Valid @RequestBody VoteRequest voteRequest){
+                                 @Valid @RequestBody VoteRequest voteRequest,
+                                 @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey){
 
+        if(idempotencyKey != null){
+            return voteIdempotencyService.castOnce(currentUser.getId(),idempotencyKey,pollId,voteRequest.getChoiceId(),
+                    () -> pollService.castVoteAndGetUpdatedPoll(pollId,voteRequest,currentUser));
+        }
         return pollService.castVoteAndGetUpdatedPoll(pollId,voteRequest,currentUser);
     }
+
+    /**
+     * Live results of a poll as Server-Sent Events: the current results right away, then one "results" event per
+     * change, at most app.stream.maxUpdatesPerSecond a second. The stream completes once the poll has expired.
+     */
+    @GetMapping(value = "/{pollId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamResults(@PathVariable Long pollId){
+        return pollResultsBroadcaster.subscribe(pollId);
+    }
+
+    /**
+     * Downloads every vote of the poll (user, choice and time) as CSV or newline delimited JSON; only the poll's
+     * creator may export it. The rows are streamed as they are read.
+     */
+    @GetMapping("/{pollId}/export")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<StreamingResponseBody> exportVotes(@CurrentUser UserPrincipal currentUser,
+                                                             @PathVariable Long pollId,
+                                                             @RequestParam(value = "format", defaultValue = "csv") String format){
+        VoteExportService.Format exportFormat = VoteExportService.Format.of(format);
+        StreamingResponseBody body = voteExportService.export(pollId,currentUser,exportFormat);
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"poll-"+pollId+"-votes."+exportFormat.getExtension()+"\"")
+                .body(body);
+    }
+
+    /**
+     * Uploads votes collected offline, as a JSON array or as newline delimited JSON records of the form
+     * {"pollId":1,"userId":2,"choiceId":3,"timestamp":"2019-06-01T10:15:30Z"}.
+     */
+    @PostMapping("/votes/bulk")
+    @PreAuthorize("hasRole('ADMIN')")
+    public BulkVoteResponse syncVotes(HttpServletRequest request) throws IOException {
+        return bulkVoteService.importVotes(request.getInputStream());
+    }
 }
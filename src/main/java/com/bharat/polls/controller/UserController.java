@@ -2,13 +2,14 @@ package com.bharat.polls.controller;
 
 import com.bharat.polls.exceptions.ResourceNotFoundException;
 import com.bharat.polls.model.User;
+import com.bharat.polls.model.UserStats;
 import com.bharat.polls.payload.*;
-import com.bharat.polls.repository.PollRepository;
 import com.bharat.polls.repository.UserRepository;
-import com.bharat.polls.repository.VoteRepository;
 import com.bharat.polls.security.CurrentUser;
 import com.bharat.polls.security.UserPrincipal;
 import com.bharat.polls.service.PollService;
+import com.bharat.polls.service.UserIdentityIndex;
+import com.bharat.polls.service.UserStatsService;
 import com.bharat.polls.util.AppConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,10 +25,10 @@ public class UserController {
     private UserRepository userRepository;
 
     @Autowired
-    private PollRepository pollRepository;
+    private UserStatsService userStatsService;
 
     @Autowired
-    private VoteRepository voteRepository;
+    private UserIdentityIndex userIdentityIndex;
 
     @Autowired
     private PollService pollService;
@@ -43,23 +44,23 @@ public class UserController {
 
     @GetMapping("/user/checkUsernameAvailability")
     public UserIdentityAvailability checkUsernameAvailability(@RequestParam(value="username") String username){
-        Boolean isAvailable = !userRepository.existsByUsername(username);
+        Boolean isAvailable = userIdentityIndex.isUsernameAvailable(username);
         return new UserIdentityAvailability(isAvailable);
     }
 
     @GetMapping("/user/checkEmailAvailability")
     public UserIdentityAvailability checkEmailAvailability(@RequestParam(value="email") String email){
-        Boolean isAvailable = !userRepository.existsByUsername(email);
+        Boolean isAvailable = userIdentityIndex.isEmailAvailable(email);
         return new UserIdentityAvailability(isAvailable);
     }
 
     @GetMapping("/user/{username}")
     public UserProfile getUserProfile(@RequestParam(value="username") String username){
         User user = userRepository.findByUsername(username).orElseThrow(() -> new ResourceNotFoundException("User","username",username));
-        Long pollCount = pollRepository.countByCreatedBy(user.getId());
-        Long voteCount = voteRepository.countByUserId(user.getId());
+        UserStats stats = userStatsService.get(user.getId());
 
-        return new UserProfile(user.getId(),user.getUsername(),user.getName(),user.getCreatedAt(),pollCount,voteCount);
+        return new UserProfile(user.getId(),user.getUsername(),user.getName(),user.getCreatedAt(),
+                stats.getPollCount(),stats.getVoteCount(),stats.getLastActivityAt());
 
     }
 
@@ -72,6 +73,14 @@ public class UserController {
         return pollService.getPollsCreatedBy(username, currentUser, page, size);
     }
 
+    @GetMapping(value = "/user/{username}/polls", params = "cursor")
+    public CursorPagedResponse<PollResponse> getPollsCreatedBy(@PathVariable(value = "username") String username,
+                                                               @CurrentUser UserPrincipal currentUser,
+                                                               @RequestParam(value = "cursor") String cursor,
+                                                               @RequestParam(value = "size", defaultValue = AppConstants.DEFAULT_PAGE_SIZE) int size){
+        return pollService.getPollsCreatedBy(username, currentUser, cursor, size);
+    }
+
     @GetMapping("/user/{username}/votes")
     public PagedResponse<PollResponse> getPollsVotedBy(@PathVariable(value = "username") String username,
                                                        @CurrentUser UserPrincipal currentUser,
@@ -79,4 +88,12 @@ public class UserController {
                                                        @RequestParam(value="size",defaultValue = AppConstants.DEFAULT_PAGE_SIZE) int size){
         return pollService.getPollsVotedBy(username,currentUser,page,size);
     }
+
+    @GetMapping(value = "/user/{username}/votes", params = "cursor")
+    public CursorPagedResponse<PollResponse> getPollsVotedBy(@PathVariable(value = "username") String username,
+                                                             @CurrentUser UserPrincipal currentUser,
+                                                             @RequestParam(value = "cursor") String cursor,
+                                                             @RequestParam(value = "size", defaultValue = AppConstants.DEFAULT_PAGE_SIZE) int size){
+        return pollService.getPollsVotedBy(username,currentUser,cursor,size);
+    }
 }
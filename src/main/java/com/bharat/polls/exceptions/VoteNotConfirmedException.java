@@ -0,0 +1,19 @@
+package com.bharat.polls.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * A vote was accepted for writing but its commit was not confirmed in time; it will most likely still be stored.
+ */
+@ResponseStatus(HttpStatus.ACCEPTED)
+public class VoteNotConfirmedException extends RuntimeException {
+
+    public VoteNotConfirmedException(String message) {
+        super(message);
+    }
+
+    public VoteNotConfirmedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
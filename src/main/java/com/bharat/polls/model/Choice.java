@@ -1,5 +1,8 @@
 package com.bharat.polls.model;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
 import javax.persistence.*;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.Size;
@@ -8,8 +11,17 @@ import javax.validation.constraints.Size;
 @Table(name="choices")
 public class Choice {
 
+    // allocated in blocks like Poll#id, so choices are batch inserted with their polls
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = "choice_ids")
+    @GenericGenerator(name = "choice_ids", strategy = "org.hibernate.id.enhanced.TableGenerator", parameters = {
+            @Parameter(name = "table_name", value = "id_generators"),
+            @Parameter(name = "segment_column_name", value = "name"),
+            @Parameter(name = "value_column_name", value = "next_val"),
+            @Parameter(name = "segment_value", value = "choices"),
+            @Parameter(name = "increment_size", value = "100"),
+            @Parameter(name = "optimizer", value = "pooled-lo")
+    })
     private Long id;
 
     @NotBlank
@@ -20,6 +32,12 @@ public class Choice {
     @JoinColumn(name="poll_id",nullable = false)
     private Poll poll;
 
+    /*
+    * Maintained by atomic UPDATE ... SET vote_count = vote_count + n statements in the same transaction as the vote
+    * insert, never by flushing this entity, hence updatable = false. */
+    @Column(name = "vote_count", nullable = false, updatable = false, columnDefinition = "bigint not null default 0")
+    private Long voteCount = 0L;
+
     public Choice() {
     }
 
@@ -50,6 +68,14 @@ public class Choice {
         this.poll = poll;
     }
 
+    public Long getVoteCount() {
+        return voteCount;
+    }
+
+    public void setVoteCount(Long voteCount) {
+        this.voteCount = voteCount;
+    }
+
     @Override
     public int hashCode() {
         return super.hashCode();
@@ -2,6 +2,7 @@ package com.bharat.polls.model;
 
 public class ChoiceVoteCount {
 
+    private Long pollId;
     private Long choiceId;
     private Long voteCount;
 
@@ -10,6 +11,20 @@ public class ChoiceVoteCount {
         this.voteCount = voteCount;
     }
 
+    public ChoiceVoteCount(Long pollId, Long choiceId, Long voteCount) {
+        this.pollId = pollId;
+        this.choiceId = choiceId;
+        this.voteCount = voteCount;
+    }
+
+    public Long getPollId() {
+        return pollId;
+    }
+
+    public void setPollId(Long pollId) {
+        this.pollId = pollId;
+    }
+
     public Long getChoiceId() {
         return choiceId;
     }
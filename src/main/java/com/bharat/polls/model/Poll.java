@@ -4,6 +4,8 @@ import com.bharat.polls.model.audit.UserDateAudit;
 import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.Fetch;
 import org.hibernate.annotations.FetchMode;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 import javax.persistence.*;
 import javax.validation.constraints.NotBlank;
@@ -14,11 +16,27 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name="polls")
+@Table(name="polls", indexes = {
+        @Index(name = "idx_polls_created_at_id", columnList = "createdAt,id"),
+        @Index(name = "idx_polls_created_by_created_at_id", columnList = "createdBy,createdAt,id"),
+        @Index(name = "idx_polls_expiration_date_time", columnList = "expirationDateTime")
+})
 public class Poll extends UserDateAudit {
 
+    /*
+    * Ids come in blocks of 100 from the id_generators table (pooled-lo: the stored value is the first id of the next
+    * block), so Hibernate knows them before inserting and can batch the inserts; IDENTITY would force one INSERT per
+    * row. IdGeneratorSeeder keeps the stored value above the ids already in the table. */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = "poll_ids")
+    @GenericGenerator(name = "poll_ids", strategy = "org.hibernate.id.enhanced.TableGenerator", parameters = {
+            @Parameter(name = "table_name", value = "id_generators"),
+            @Parameter(name = "segment_column_name", value = "name"),
+            @Parameter(name = "value_column_name", value = "next_val"),
+            @Parameter(name = "segment_value", value = "polls"),
+            @Parameter(name = "increment_size", value = "100"),
+            @Parameter(name = "optimizer", value = "pooled-lo")
+    })
     private Long id;
 
     @NotBlank
@@ -39,6 +57,15 @@ public class Poll extends UserDateAudit {
     @NotNull
     private Instant expirationDateTime;
 
+    // Kept in step with the vote_count of the choices, see Choice#voteCount.
+    @Column(name = "total_votes", nullable = false, updatable = false, columnDefinition = "bigint not null default 0")
+    private Long totalVotes = 0L;
+
+    // Bumped together with totalVotes on every vote, and whenever the stored counts are rewritten. Clients see it
+    // only through ETags, see VoteTallyService#getVersions.
+    @Column(name = "version", nullable = false, updatable = false, columnDefinition = "bigint not null default 0")
+    private Long version = 0L;
+
     public Long getId() {
         return id;
     }
@@ -71,6 +98,22 @@ public class Poll extends UserDateAudit {
         this.expirationDateTime = expirationDateTime;
     }
 
+    public Long getTotalVotes() {
+        return totalVotes;
+    }
+
+    public void setTotalVotes(Long totalVotes) {
+        this.totalVotes = totalVotes;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public void addChoice(Choice choice){
         choices.add(choice);
         choice.setPoll(this);
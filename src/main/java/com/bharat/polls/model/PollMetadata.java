@@ -0,0 +1,52 @@
+package com.bharat.polls.model;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * The few facts about a poll that are needed to validate a vote, without the {@link Poll} entity and its choices.
+ * Instances are immutable and safe to share between threads.
+ */
+public final class PollMetadata {
+
+    private final Long id;
+    private final Instant expirationDateTime;
+    private final long[] choiceIds;
+    private final Long createdBy;
+
+    public PollMetadata(Long id, Instant expirationDateTime, long[] choiceIds, Long createdBy) {
+        this.id = id;
+        this.expirationDateTime = expirationDateTime;
+        this.choiceIds = choiceIds.clone();
+        this.createdBy = createdBy;
+    }
+
+    public static PollMetadata of(Poll poll){
+        long[] choiceIds = poll.getChoices().stream().mapToLong(Choice::getId).toArray();
+        return new PollMetadata(poll.getId(),poll.getExpirationDateTime(),choiceIds,poll.getCreatedBy());
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Instant getExpirationDateTime() {
+        return expirationDateTime;
+    }
+
+    public long[] getChoiceIds() {
+        return choiceIds.clone();
+    }
+
+    public Long getCreatedBy() {
+        return createdBy;
+    }
+
+    public boolean isExpiredAt(Instant instant){
+        return expirationDateTime.isBefore(instant);
+    }
+
+    public boolean hasChoice(Long choiceId){
+        return Arrays.stream(choiceIds).anyMatch(id -> id == choiceId);
+    }
+}
@@ -0,0 +1,100 @@
+package com.bharat.polls.model;
+
+import javax.persistence.*;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Final results of an expired poll, written once by the freeze job and never changed afterwards.
+ *
+ * The counts are kept in a single column as "choiceId:count" pairs in choice order, so one row holds everything
+ * needed to show the result.
+ */
+@Entity
+@Table(name = "poll_results")
+public class PollResult {
+
+    @Id
+    @Column(name = "poll_id")
+    private Long pollId;
+
+    // the poll's version when it was frozen, so ETags of expired polls stay stable
+    @Column(nullable = false)
+    private Long version;
+
+    @Column(name = "total_votes", nullable = false)
+    private Long totalVotes;
+
+    @Column(name = "vote_counts", nullable = false, length = 512)
+    private String voteCounts;
+
+    @Column(name = "frozen_at", nullable = false)
+    private Instant frozenAt;
+
+    public static String encodeVoteCounts(Map<Long,Long> choiceVoteCounts){
+        StringBuilder encoded = new StringBuilder();
+        choiceVoteCounts.forEach((choiceId,count) -> {
+            if(encoded.length() > 0){
+                encoded.append(',');
+            }
+            encoded.append(choiceId).append(':').append(count);
+        });
+        return encoded.toString();
+    }
+
+    public Long getPollId() {
+        return pollId;
+    }
+
+    public void setPollId(Long pollId) {
+        this.pollId = pollId;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public Long getTotalVotes() {
+        return totalVotes;
+    }
+
+    public void setTotalVotes(Long totalVotes) {
+        this.totalVotes = totalVotes;
+    }
+
+    public String getVoteCounts() {
+        return voteCounts;
+    }
+
+    public void setVoteCounts(String voteCounts) {
+        this.voteCounts = voteCounts;
+    }
+
+    public Instant getFrozenAt() {
+        return frozenAt;
+    }
+
+    public void setFrozenAt(Instant frozenAt) {
+        this.frozenAt = frozenAt;
+    }
+
+    /**
+     * @return vote count by choice id, in choice order
+     */
+    public Map<Long,Long> getChoiceVoteCounts(){
+        Map<Long,Long> counts = new LinkedHashMap<>();
+        if(!voteCounts.isEmpty()){
+            for(String pair : voteCounts.split(",")){
+                int separator = pair.indexOf(':');
+                counts.put(Long.parseLong(pair.substring(0,separator)),Long.parseLong(pair.substring(separator+1)));
+            }
+        }
+        return Collections.unmodifiableMap(counts);
+    }
+}
@@ -2,6 +2,7 @@ package com.bharat.polls.model;
 
 
 import com.bharat.polls.model.audit.DateAudit;
+import com.bharat.polls.service.UserSummaryCacheListener;
 import org.hibernate.annotations.NaturalId;
 
 import javax.persistence.*;
@@ -16,6 +17,7 @@ import java.util.Set;
         @UniqueConstraint(columnNames = "username"),
         @UniqueConstraint(columnNames = "email")
 })
+@EntityListeners(UserSummaryCacheListener.class)
 public class User extends DateAudit {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -0,0 +1,72 @@
+package com.bharat.polls.model;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+/**
+ * Per-user activity counters shown on the user profile.
+ *
+ * Rows are only written with upserts: incremented in the transactions that create polls and store votes, and
+ * recomputed from the polls and votes tables by the rebuild job. A user without a row has no recorded activity.
+ */
+@Entity
+@Table(name = "user_stats")
+public class UserStats {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "poll_count", nullable = false)
+    private Long pollCount;
+
+    @Column(name = "vote_count", nullable = false)
+    private Long voteCount;
+
+    // the latest poll creation or vote, null while there is none
+    @Column(name = "last_activity_at")
+    private Instant lastActivityAt;
+
+    public UserStats() {
+
+    }
+
+    public UserStats(Long userId, Long pollCount, Long voteCount, Instant lastActivityAt) {
+        this.userId = userId;
+        this.pollCount = pollCount;
+        this.voteCount = voteCount;
+        this.lastActivityAt = lastActivityAt;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getPollCount() {
+        return pollCount;
+    }
+
+    public void setPollCount(Long pollCount) {
+        this.pollCount = pollCount;
+    }
+
+    public Long getVoteCount() {
+        return voteCount;
+    }
+
+    public void setVoteCount(Long voteCount) {
+        this.voteCount = voteCount;
+    }
+
+    public Instant getLastActivityAt() {
+        return lastActivityAt;
+    }
+
+    public void setLastActivityAt(Instant lastActivityAt) {
+        this.lastActivityAt = lastActivityAt;
+    }
+}
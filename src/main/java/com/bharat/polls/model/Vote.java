@@ -1,6 +1,7 @@
 package com.bharat.polls.model;
 
 import javax.persistence.*;
+import java.time.Instant;
 
 
 @Entity
@@ -9,6 +10,9 @@ import javax.persistence.*;
                 "poll_id",
                 "user_id"
         })
+}, indexes = {
+//        covers the "polls voted by" listing: a user's votes in cast order, poll id included
+        @Index(name = "idx_votes_user_id_voted_at_poll_id", columnList = "user_id,voted_at,poll_id")
 })
 public class Vote {
 
@@ -28,6 +32,10 @@ public class Vote {
     @JoinColumn(name = "choice_id", nullable = false)
     private Choice choice;
 
+//    votes are written with plain SQL inserts; rows that predate the column get the time it was added
+    @Column(name = "voted_at", nullable = false, updatable = false, columnDefinition = "datetime not null default current_timestamp")
+    private Instant votedAt;
+
     public Long getId() {
         return id;
     }
@@ -59,4 +67,12 @@ public class Vote {
     public void setChoice(Choice choice) {
         this.choice = choice;
     }
+
+    public Instant getVotedAt() {
+        return votedAt;
+    }
+
+    public void setVotedAt(Instant votedAt) {
+        this.votedAt = votedAt;
+    }
 }
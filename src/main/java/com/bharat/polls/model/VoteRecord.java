@@ -0,0 +1,38 @@
+package com.bharat.polls.model;
+
+import java.time.Instant;
+
+/**
+ * A vote expressed purely by id references, used wherever votes are written in bulk over JDBC
+ * instead of going through the {@link Vote} entity.
+ */
+public class VoteRecord {
+
+    private final Long pollId;
+    private final Long userId;
+    private final Long choiceId;
+    private final Instant votedAt;
+
+    public VoteRecord(Long pollId, Long userId, Long choiceId, Instant votedAt) {
+        this.pollId = pollId;
+        this.userId = userId;
+        this.choiceId = choiceId;
+        this.votedAt = votedAt;
+    }
+
+    public Long getPollId() {
+        return pollId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public Long getChoiceId() {
+        return choiceId;
+    }
+
+    public Instant getVotedAt() {
+        return votedAt;
+    }
+}
@@ -0,0 +1,41 @@
+package com.bharat.polls.payload;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a bulk poll creation: totals plus one result per submitted poll, in request order.
+ */
+public class BulkPollResponse {
+
+    private int received;
+    private int created;
+    private int rejected;
+    private List<BulkPollResult> results = new ArrayList<>();
+
+    public void addResult(BulkPollResult result){
+        received++;
+        if(result.getStatus() == BulkPollResult.Status.CREATED){
+            created++;
+        } else {
+            rejected++;
+        }
+        results.add(result);
+    }
+
+    public int getReceived() {
+        return received;
+    }
+
+    public int getCreated() {
+        return created;
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+
+    public List<BulkPollResult> getResults() {
+        return results;
+    }
+}
@@ -0,0 +1,59 @@
+package com.bharat.polls.payload;
+
+public class BulkPollResult {
+
+    public enum Status {
+        CREATED,
+        INVALID
+    }
+
+    // Position of the poll in the request, starting at 0.
+    private int index;
+
+    private Status status;
+
+    // set for created polls
+    private Long pollId;
+
+    // the first constraint the poll violates, set for invalid polls
+    private String message;
+
+    public BulkPollResult(int index, Status status, Long pollId, String message) {
+        this.index = index;
+        this.status = status;
+        this.pollId = pollId;
+        this.message = message;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public Long getPollId() {
+        return pollId;
+    }
+
+    public void setPollId(Long pollId) {
+        this.pollId = pollId;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
@@ -0,0 +1,47 @@
+package com.bharat.polls.payload;
+
+import java.time.Instant;
+
+public class BulkVoteRecord {
+
+    private Long pollId;
+
+    private Long userId;
+
+    private Long choiceId;
+
+    // When the vote was cast on the kiosk, which may be well before the upload.
+    private Instant timestamp;
+
+    public Long getPollId() {
+        return pollId;
+    }
+
+    public void setPollId(Long pollId) {
+        this.pollId = pollId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getChoiceId() {
+        return choiceId;
+    }
+
+    public void setChoiceId(Long choiceId) {
+        this.choiceId = choiceId;
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(Instant timestamp) {
+        this.timestamp = timestamp;
+    }
+}
@@ -0,0 +1,52 @@
+package com.bharat.polls.payload;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Totals for a bulk vote upload. Only records that were not accepted are listed individually, so the response
+ * stays small for large uploads.
+ */
+public class BulkVoteResponse {
+
+    private long received;
+    private long accepted;
+    private long duplicates;
+    private long rejected;
+    private List<BulkVoteResult> failures = new ArrayList<>();
+
+    public void addResult(long index, BulkVoteResult.Status status){
+        received++;
+        switch (status){
+            case ACCEPTED:
+                accepted++;
+                return;
+            case DUPLICATE:
+                duplicates++;
+                break;
+            default:
+                rejected++;
+        }
+        failures.add(new BulkVoteResult(index,status));
+    }
+
+    public long getReceived() {
+        return received;
+    }
+
+    public long getAccepted() {
+        return accepted;
+    }
+
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public List<BulkVoteResult> getFailures() {
+        return failures;
+    }
+}
@@ -0,0 +1,40 @@
+package com.bharat.polls.payload;
+
+public class BulkVoteResult {
+
+    public enum Status {
+        ACCEPTED,
+        DUPLICATE,
+        INVALID,
+        POLL_NOT_FOUND,
+        CHOICE_NOT_FOUND,
+        USER_NOT_FOUND,
+        POLL_EXPIRED
+    }
+
+    // Position of the record in the uploaded stream, starting at 0.
+    private long index;
+
+    private Status status;
+
+    public BulkVoteResult(long index, Status status) {
+        this.index = index;
+        this.status = status;
+    }
+
+    public long getIndex() {
+        return index;
+    }
+
+    public void setIndex(long index) {
+        this.index = index;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+}
@@ -0,0 +1,57 @@
+package com.bharat.polls.payload;
+
+import java.util.List;
+
+/**
+ * A page of a keyset-paginated listing. There are no totals; nextCursor fetches the following page and is null
+ * on the last one.
+ */
+public class CursorPagedResponse<T> {
+
+    private List<T> content;
+    private int size;
+    private String nextCursor;
+    private boolean last;
+
+    public CursorPagedResponse() {
+    }
+
+    public CursorPagedResponse(List<T> content, int size, String nextCursor) {
+        this.content = content;
+        this.size = size;
+        this.nextCursor = nextCursor;
+        this.last = nextCursor == null;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public void setContent(List<T> content) {
+        this.content = content;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public boolean isLast() {
+        return last;
+    }
+
+    public void setLast(boolean last) {
+        this.last = last;
+    }
+}
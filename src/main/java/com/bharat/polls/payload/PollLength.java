@@ -1,16 +1,19 @@
 package com.bharat.polls.payload;
 
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
-import javax.validation.constraints.Size;
 
 public class PollLength {
 
     @NotNull
-    @Size(max=7)
+    @Min(0)
+    @Max(7)
     private Integer days;
 
     @NotNull
-    @Size(max=23)
+    @Min(0)
+    @Max(23)
     private Integer hours;
 
     public Integer getDays() {
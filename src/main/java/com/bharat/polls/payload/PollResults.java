@@ -0,0 +1,73 @@
+package com.bharat.polls.payload;
+
+import java.util.Map;
+
+/**
+ * Current vote counts of a poll, as pushed to live result subscribers. On WebSockets it is the snapshot that
+ * {@link PollResultsDelta} frames apply to.
+ */
+public class PollResults {
+
+    public static final String TYPE = "results";
+
+    private Long pollId;
+    private long version;
+    private Map<Long,Long> choiceVoteCounts;
+    private long totalVotes;
+    private boolean expired;
+
+    public PollResults() {
+    }
+
+    public PollResults(Long pollId, long version, Map<Long, Long> choiceVoteCounts, long totalVotes, boolean expired) {
+        this.pollId = pollId;
+        this.version = version;
+        this.choiceVoteCounts = choiceVoteCounts;
+        this.totalVotes = totalVotes;
+        this.expired = expired;
+    }
+
+    public String getType() {
+        return TYPE;
+    }
+
+    public Long getPollId() {
+        return pollId;
+    }
+
+    public void setPollId(Long pollId) {
+        this.pollId = pollId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public Map<Long, Long> getChoiceVoteCounts() {
+        return choiceVoteCounts;
+    }
+
+    public void setChoiceVoteCounts(Map<Long, Long> choiceVoteCounts) {
+        this.choiceVoteCounts = choiceVoteCounts;
+    }
+
+    public long getTotalVotes() {
+        return totalVotes;
+    }
+
+    public void setTotalVotes(long totalVotes) {
+        this.totalVotes = totalVotes;
+    }
+
+    public boolean isExpired() {
+        return expired;
+    }
+
+    public void setExpired(boolean expired) {
+        this.expired = expired;
+    }
+}
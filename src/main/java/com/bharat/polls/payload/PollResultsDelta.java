@@ -0,0 +1,63 @@
+package com.bharat.polls.payload;
+
+import java.util.Map;
+
+/**
+ * Change of a poll's vote counts since the previous frame: the number of votes to add per choice id. Only choices
+ * whose count changed are listed.
+ */
+public class PollResultsDelta {
+
+    public static final String TYPE = "delta";
+
+    private Long pollId;
+    private long version;
+    private Map<Long,Long> choiceVoteDeltas;
+    private boolean expired;
+
+    public PollResultsDelta() {
+    }
+
+    public PollResultsDelta(Long pollId, long version, Map<Long, Long> choiceVoteDeltas, boolean expired) {
+        this.pollId = pollId;
+        this.version = version;
+        this.choiceVoteDeltas = choiceVoteDeltas;
+        this.expired = expired;
+    }
+
+    public String getType() {
+        return TYPE;
+    }
+
+    public Long getPollId() {
+        return pollId;
+    }
+
+    public void setPollId(Long pollId) {
+        this.pollId = pollId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public Map<Long, Long> getChoiceVoteDeltas() {
+        return choiceVoteDeltas;
+    }
+
+    public void setChoiceVoteDeltas(Map<Long, Long> choiceVoteDeltas) {
+        this.choiceVoteDeltas = choiceVoteDeltas;
+    }
+
+    public boolean isExpired() {
+        return expired;
+    }
+
+    public void setExpired(boolean expired) {
+        this.expired = expired;
+    }
+}
@@ -0,0 +1,29 @@
+package com.bharat.polls.payload;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Message a live results WebSocket client sends to change the set of polls it watches.
+ */
+public class PollResultsSubscription {
+
+    private List<Long> subscribe = new ArrayList<>();
+    private List<Long> unsubscribe = new ArrayList<>();
+
+    public List<Long> getSubscribe() {
+        return subscribe;
+    }
+
+    public void setSubscribe(List<Long> subscribe) {
+        this.subscribe = subscribe;
+    }
+
+    public List<Long> getUnsubscribe() {
+        return unsubscribe;
+    }
+
+    public void setUnsubscribe(List<Long> unsubscribe) {
+        this.unsubscribe = unsubscribe;
+    }
+}
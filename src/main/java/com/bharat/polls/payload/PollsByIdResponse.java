@@ -0,0 +1,25 @@
+package com.bharat.polls.payload;
+
+import java.util.List;
+
+/**
+ * Polls fetched by id, in the order they were asked for, and the requested ids that matched no poll.
+ */
+public class PollsByIdResponse {
+
+    private List<PollResponse> polls;
+    private List<Long> missingIds;
+
+    public PollsByIdResponse(List<PollResponse> polls, List<Long> missingIds) {
+        this.polls = polls;
+        this.missingIds = missingIds;
+    }
+
+    public List<PollResponse> getPolls() {
+        return polls;
+    }
+
+    public List<Long> getMissingIds() {
+        return missingIds;
+    }
+}
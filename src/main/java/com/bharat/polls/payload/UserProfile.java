@@ -10,14 +10,17 @@ public class UserProfile {
     private Instant joinedAt;
     private Long pollCount;
     private Long voteCount;
+    private Instant lastActivityAt;
 
-    public UserProfile(Long id, String username, String name, Instant joinedAt, Long pollCount, Long voteCount) {
+    public UserProfile(Long id, String username, String name, Instant joinedAt, Long pollCount, Long voteCount,
+                       Instant lastActivityAt) {
         this.id = id;
         this.username = username;
         this.name = name;
         this.joinedAt = joinedAt;
         this.pollCount = pollCount;
         this.voteCount = voteCount;
+        this.lastActivityAt = lastActivityAt;
     }
 
     public Long getId() {
@@ -67,4 +70,12 @@ public class UserProfile {
     public void setVoteCount(Long voteCount) {
         this.voteCount = voteCount;
     }
+
+    public Instant getLastActivityAt() {
+        return lastActivityAt;
+    }
+
+    public void setLastActivityAt(Instant lastActivityAt) {
+        this.lastActivityAt = lastActivityAt;
+    }
 }
@@ -0,0 +1,22 @@
+package com.bharat.polls.repository;
+
+import com.bharat.polls.model.Choice;
+import com.bharat.polls.model.ChoiceVoteCount;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ChoiceRepository extends JpaRepository<Choice,Long> {
+
+    @Query("SELECT NEW com.bharat.polls.model.ChoiceVoteCount(c.poll.id,c.id,c.voteCount) FROM Choice c WHERE c.poll.id in :pollIds")
+    List<ChoiceVoteCount> findVoteCountsByPollIdIn(@Param("pollIds") List<Long> pollIds);
+
+    @Modifying
+    @Query("UPDATE Choice c SET c.voteCount = c.voteCount + :delta WHERE c.id = :choiceId")
+    int incrementVoteCount(@Param("choiceId") Long choiceId, @Param("delta") long delta);
+}
@@ -0,0 +1,137 @@
+package com.bharat.polls.repository;
+
+import com.bharat.polls.payload.ChoiceResponse;
+import com.bharat.polls.payload.PollResponse;
+import com.bharat.polls.payload.UserSummary;
+import com.bharat.polls.util.PageCursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds pages of the poll feed straight from SQL into {@link PollResponse} DTOs.
+ *
+ * A page is one query: the page of poll ids is picked in a derived table and joined with the choices and their
+ * stored vote counts, the creator's summary and the current user's vote. No entities are loaded, so nothing ends up
+ * in the persistence context.
+ */
+@Repository
+public class PollFeedRepository {
+
+    private static final String FEED_PAGE_SQL =
+            "SELECT p.id, p.question, p.created_at, p.expiration_date_time, p.created_by, u.username, u.name, " +
+            "c.id AS choice_id, c.text, c.vote_count, v.choice_id AS selected_choice " +
+            "FROM (%s) page " +
+            "JOIN polls p ON p.id = page.id " +
+            "JOIN choices c ON c.poll_id = p.id " +
+            "LEFT JOIN users u ON u.id = p.created_by " +
+            "LEFT JOIN votes v ON v.poll_id = p.id AND v.user_id = ? " +
+            "ORDER BY p.created_at DESC, p.id DESC, c.id";
+
+    private static final String OFFSET_PAGE_IDS_SQL =
+            "SELECT id FROM polls ORDER BY created_at DESC, id DESC LIMIT ? OFFSET ?";
+
+    // Walks the polls(created_at, id) index backwards from the cursor.
+    private static final String KEYSET_PAGE_IDS_SQL =
+            "SELECT id FROM polls WHERE created_at < ? OR (created_at = ? AND id < ?) " +
+            "ORDER BY created_at DESC, id DESC LIMIT ?";
+
+    private static final String FIRST_PAGE_IDS_SQL =
+            "SELECT id FROM polls ORDER BY created_at DESC, id DESC LIMIT ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * @param currentUserId the user whose selected choices are filled in, or null for anonymous requests
+     */
+    public List<PollResponse> findPage(Long currentUserId, long offset, int limit){
+        return query(OFFSET_PAGE_IDS_SQL,currentUserId,limit,offset);
+    }
+
+    /**
+     * @return the ids of the polls {@link #findPage(Long, long, int)} would return, read from the index alone
+     */
+    public List<Long> findPageIds(long offset, int limit){
+        return jdbcTemplate.queryForList(OFFSET_PAGE_IDS_SQL,Long.class,limit,offset);
+    }
+
+    /**
+     * @param after the position of the last poll of the previous page, or null for the first page
+     * @return the ids of the next limit polls of the feed, read from the index alone
+     */
+    public List<Long> findPageIdsAfter(PageCursor after, int limit){
+        if(after == null){
+            return jdbcTemplate.queryForList(FIRST_PAGE_IDS_SQL,Long.class,limit);
+        }
+        Timestamp createdAt = Timestamp.from(after.getTimestamp());
+        return jdbcTemplate.queryForList(KEYSET_PAGE_IDS_SQL,Long.class,createdAt,createdAt,after.getId(),limit);
+    }
+
+    /**
+     * @param pollIds the ids of a page, as read by {@link #findPageIds(long, int)} or {@link #findPageIdsAfter(PageCursor, int)}
+     * @return the polls of that page that still exist, in feed order
+     */
+    public List<PollResponse> findPolls(Long currentUserId, List<Long> pollIds){
+        if(pollIds.isEmpty()){
+            return new ArrayList<>();
+        }
+        String placeholders = String.join(",",Collections.nCopies(pollIds.size(),"?"));
+        return query("SELECT id FROM polls WHERE id IN ("+placeholders+")",currentUserId,pollIds.toArray());
+    }
+
+    private List<PollResponse> query(String pageIdsSql, Long currentUserId, Object... pageArgs){
+        Map<Long,PollResponse> polls = new LinkedHashMap<>();
+        Instant now = Instant.now();
+
+        Object[] args = Arrays.copyOf(pageArgs,pageArgs.length+1);
+        args[pageArgs.length] = currentUserId;
+
+        jdbcTemplate.query(String.format(FEED_PAGE_SQL,pageIdsSql), rs -> {
+            long pollId = rs.getLong("id");
+            PollResponse poll = polls.get(pollId);
+            if(poll == null){
+                poll = mapPoll(rs,now);
+                polls.put(pollId,poll);
+            }
+
+            ChoiceResponse choice = new ChoiceResponse();
+            choice.setId(rs.getLong("choice_id"));
+            choice.setText(rs.getString("text"));
+            choice.setVoteCount(rs.getLong("vote_count"));
+            poll.getChoices().add(choice);
+            poll.setTotalVotes(poll.getTotalVotes()+choice.getVoteCount());
+        }, args);
+
+        return new ArrayList<>(polls.values());
+    }
+
+    private static PollResponse mapPoll(ResultSet rs, Instant now) throws SQLException {
+        PollResponse poll = new PollResponse();
+        poll.setId(rs.getLong("id"));
+        poll.setQuestion(rs.getString("question"));
+        poll.setCreationDateTime(rs.getTimestamp("created_at").toInstant());
+        poll.setExpirationDateTime(rs.getTimestamp("expiration_date_time").toInstant());
+        poll.setExpired(poll.getExpirationDateTime().isBefore(now));
+        poll.setCreatedBy(new UserSummary(rs.getLong("created_by"),rs.getString("username"),rs.getString("name")));
+        poll.setChoices(new ArrayList<>());
+        poll.setTotalVotes(0L);
+
+        long selectedChoice = rs.getLong("selected_choice");
+        if(!rs.wasNull()){
+            poll.setSelectedChoice(selectedChoice);
+        }
+        return poll;
+    }
+}
@@ -5,8 +5,12 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,7 +23,30 @@ public interface PollRepository extends JpaRepository<Poll,Long> {
 
     long countByCreatedBy(Long userId);
 
+    // Keyset pages of a user's polls, newest first; returning a List keeps Spring Data from issuing a count query.
+    List<Poll> findByCreatedByOrderByCreatedAtDescIdDesc(Long userId, Pageable pageable);
+
+    @Query("SELECT p FROM Poll p WHERE p.createdBy = :userId " +
+            "AND (p.createdAt < :createdAt OR (p.createdAt = :createdAt AND p.id < :id)) " +
+            "ORDER BY p.createdAt DESC, p.id DESC")
+    List<Poll> findByCreatedByBefore(@Param("userId") Long userId, @Param("createdAt") Instant createdAt,
+                                     @Param("id") Long id, Pageable pageable);
+
     List<Poll> findByIdIn(List<Long> polls);
 
     List<Poll> findByIdIn(List<Long> polls, Sort sort);
+
+    /**
+     * One row per choice: poll id, expiration time, creator id and choice id, ordered by poll and choice.
+     */
+    @Query("SELECT c.poll.id, c.poll.expirationDateTime, c.poll.createdBy, c.id FROM Choice c " +
+            "WHERE c.poll.id in :pollIds ORDER BY c.poll.id, c.id")
+    List<Object[]> findMetadataRowsByIdIn(@Param("pollIds") List<Long> pollIds);
+
+    @Query("SELECT p.id, p.version FROM Poll p WHERE p.id in :pollIds")
+    List<Object[]> findVersionsByIdIn(@Param("pollIds") List<Long> pollIds);
+
+    @Modifying
+    @Query("UPDATE Poll p SET p.totalVotes = p.totalVotes + :delta, p.version = p.version + :delta WHERE p.id = :pollId")
+    int incrementTotalVotes(@Param("pollId") Long pollId, @Param("delta") long delta);
 }
@@ -0,0 +1,13 @@
+package com.bharat.polls.repository;
+
+import com.bharat.polls.model.PollResult;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface PollResultRepository extends JpaRepository<PollResult,Long> {
+
+    List<PollResult> findByPollIdIn(List<Long> pollIds);
+}
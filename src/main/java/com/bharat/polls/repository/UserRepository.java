@@ -1,8 +1,12 @@
 package com.bharat.polls.repository;
 
 import com.bharat.polls.model.User;
+import com.bharat.polls.payload.UserSummary;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -12,12 +16,21 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     Optional<User> findByEmail(String email);
 
+    // read-only, so may be served by a replica: profiles and the created-by/voted-by listings tolerate a few seconds
+    // of lag, and a user who just created a poll or voted reads their own listings from the primary (read-your-writes)
+    @Transactional(readOnly = true)
     Optional<User> findByUsername(String username);
 
     Optional<User> findByUsernameOrEmail(String username, String email);
 
     List<User> findByIdIn(List<Long> userIds);
 
+    @Query("SELECT NEW com.bharat.polls.payload.UserSummary(u.id,u.username,u.name) FROM User u WHERE u.id in :userIds")
+    List<UserSummary> findSummariesByIdIn(@Param("userIds") List<Long> userIds);
+
+    @Query("SELECT u.id FROM User u WHERE u.id in :userIds")
+    List<Long> findIdsByIdIn(@Param("userIds") List<Long> userIds);
+
     Boolean existsByUsername(String username);
 
     Boolean existsByEmail(String name);
@@ -0,0 +1,26 @@
+package com.bharat.polls.repository;
+
+import com.bharat.polls.model.UserStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+
+@Repository
+public interface UserStatsRepository extends JpaRepository<UserStats,Long> {
+
+    @Modifying
+    @Query(value = "INSERT INTO user_stats (user_id, poll_count, vote_count, last_activity_at) VALUES (:userId, :delta, 0, :at) " +
+            "ON DUPLICATE KEY UPDATE poll_count = poll_count + VALUES(poll_count), " +
+            "last_activity_at = GREATEST(COALESCE(last_activity_at, VALUES(last_activity_at)), VALUES(last_activity_at))", nativeQuery = true)
+    int incrementPollCount(@Param("userId") Long userId, @Param("delta") long delta, @Param("at") Instant at);
+
+    @Modifying
+    @Query(value = "INSERT INTO user_stats (user_id, poll_count, vote_count, last_activity_at) VALUES (:userId, 0, :delta, :at) " +
+            "ON DUPLICATE KEY UPDATE vote_count = vote_count + VALUES(vote_count), " +
+            "last_activity_at = GREATEST(COALESCE(last_activity_at, VALUES(last_activity_at)), VALUES(last_activity_at))", nativeQuery = true)
+    int incrementVoteCount(@Param("userId") Long userId, @Param("delta") long delta, @Param("at") Instant at);
+}
@@ -0,0 +1,161 @@
+package com.bharat.polls.repository;
+
+import com.bharat.polls.model.VoteRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Writes votes in bulk with plain JDBC.
+ *
+ * Every batch runs in its own transaction. The (poll_id,user_id) pairs that already exist are looked up with one
+ * query, and the remaining rows go out as multi-row INSERT IGNORE statements. For the rows that were stored,
+ * choices.vote_count, polls.total_votes and the voters' user_stats rows are incremented.
+ *
+ * The caller gets back which rows were actually stored; nothing is signalled through DataIntegrityViolationException.
+ */
+@Repository
+public class VoteJdbcRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(VoteJdbcRepository.class);
+
+    private static final int MAX_ROWS_PER_STATEMENT = 500;
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * @return for each vote, in order, true if it was inserted and false if the user had already voted in that poll
+     */
+    public boolean[] insertAll(List<VoteRecord> votes){
+        for(int attempt = 1; ; attempt++){
+            try {
+                return transactionTemplate.execute(status -> insertBatch(votes));
+            } catch (ConcurrencyFailureException ex){
+                if(attempt >= MAX_ATTEMPTS){
+                    throw ex;
+                }
+                logger.warn("Retrying vote batch of {} rows after concurrent write: {}", votes.size(), ex.getMessage());
+            }
+        }
+    }
+
+    private boolean[] insertBatch(List<VoteRecord> votes){
+        boolean[] inserted = new boolean[votes.size()];
+        Set<String> taken = findExistingVoteKeys(votes);
+        List<VoteRecord> fresh = new ArrayList<>(votes.size());
+
+        for(int i=0;i<votes.size();i++){
+            VoteRecord vote = votes.get(i);
+//            a key seen earlier in the same batch counts as taken as well
+            if(taken.add(key(vote.getPollId(),vote.getUserId()))){
+                inserted[i] = true;
+                fresh.add(vote);
+            }
+        }
+
+        for(int from=0;from<fresh.size();from+=MAX_ROWS_PER_STATEMENT){
+            List<VoteRecord> chunk = fresh.subList(from,Math.min(from+MAX_ROWS_PER_STATEMENT,fresh.size()));
+            int rows = insertIgnore(chunk);
+            if(rows != chunk.size()){
+//                another writer stored one of these pairs after our lookup; roll back and redo the lookup
+                throw new ConcurrencyFailureException("Expected to insert "+chunk.size()+" votes but inserted "+rows);
+            }
+        }
+
+        incrementVoteCounts(fresh);
+
+        return inserted;
+    }
+
+    private void incrementVoteCounts(List<VoteRecord> votes){
+//        sorted maps so concurrent batches take the row locks in the same order
+        Map<Long,Long> choiceDeltas = new TreeMap<>();
+        Map<Long,Long> pollDeltas = new TreeMap<>();
+        Map<Long,Long> userDeltas = new TreeMap<>();
+        Map<Long,Instant> userLastVotes = new HashMap<>();
+        votes.forEach(vote -> {
+            choiceDeltas.merge(vote.getChoiceId(),1L,Long::sum);
+            pollDeltas.merge(vote.getPollId(),1L,Long::sum);
+            userDeltas.merge(vote.getUserId(),1L,Long::sum);
+            userLastVotes.merge(vote.getUserId(),vote.getVotedAt(),(a,b) -> a.isAfter(b) ? a : b);
+        });
+
+        jdbcTemplate.batchUpdate("UPDATE choices SET vote_count = vote_count + ? WHERE id = ?",toArgs(choiceDeltas));
+//        the poll version moves with its vote count, see Poll#version
+        List<Object[]> pollArgs = new ArrayList<>(pollDeltas.size());
+        pollDeltas.forEach((id,delta) -> pollArgs.add(new Object[]{delta,delta,id}));
+        jdbcTemplate.batchUpdate("UPDATE polls SET total_votes = total_votes + ?, version = version + ? WHERE id = ?",pollArgs);
+
+        List<Object[]> userArgs = new ArrayList<>(userDeltas.size());
+        userDeltas.forEach((id,delta) -> userArgs.add(new Object[]{id,delta,Timestamp.from(userLastVotes.get(id))}));
+        jdbcTemplate.batchUpdate("INSERT INTO user_stats (user_id, poll_count, vote_count, last_activity_at) VALUES (?, 0, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE vote_count = vote_count + VALUES(vote_count), " +
+                "last_activity_at = GREATEST(COALESCE(last_activity_at, VALUES(last_activity_at)), VALUES(last_activity_at))",userArgs);
+    }
+
+    private static List<Object[]> toArgs(Map<Long,Long> deltas){
+        List<Object[]> args = new ArrayList<>(deltas.size());
+        deltas.forEach((id,delta) -> args.add(new Object[]{delta,id}));
+        return args;
+    }
+
+    private Set<String> findExistingVoteKeys(List<VoteRecord> votes){
+        Set<String> existing = new HashSet<>();
+
+        for(int from=0;from<votes.size();from+=MAX_ROWS_PER_STATEMENT){
+            List<VoteRecord> chunk = votes.subList(from,Math.min(from+MAX_ROWS_PER_STATEMENT,votes.size()));
+            StringBuilder sql = new StringBuilder("SELECT poll_id, user_id FROM votes WHERE (poll_id, user_id) IN (");
+            Object[] args = new Object[chunk.size()*2];
+            for(int i=0;i<chunk.size();i++){
+                sql.append(i == 0 ? "(?,?)" : ",(?,?)");
+                args[i*2] = chunk.get(i).getPollId();
+                args[i*2+1] = chunk.get(i).getUserId();
+            }
+            sql.append(")");
+
+            jdbcTemplate.query(sql.toString(),args,
+                    rs -> { existing.add(key(rs.getLong(1),rs.getLong(2))); });
+        }
+
+        return existing;
+    }
+
+    private int insertIgnore(List<VoteRecord> votes){
+        StringBuilder sql = new StringBuilder("INSERT IGNORE INTO votes (poll_id, user_id, choice_id, voted_at) VALUES ");
+        Object[] args = new Object[votes.size()*4];
+        for(int i=0;i<votes.size();i++){
+            sql.append(i == 0 ? "(?,?,?,?)" : ",(?,?,?,?)");
+            VoteRecord vote = votes.get(i);
+            args[i*4] = vote.getPollId();
+            args[i*4+1] = vote.getUserId();
+            args[i*4+2] = vote.getChoiceId();
+            args[i*4+3] = Timestamp.from(vote.getVotedAt());
+        }
+
+        return jdbcTemplate.update(sql.toString(),args);
+    }
+
+    private static String key(Long pollId, Long userId){
+        return pollId+":"+userId;
+    }
+}
@@ -5,10 +5,12 @@ import com.bharat.polls.model.Vote;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
 import java.util.List;
 
 @Repository
@@ -19,7 +21,7 @@ public interface VoteRepository extends JpaRepository<Vote,Long> {
 // count the votes for each choice for given set of poll ids
 // count total votes given by a user
 // find all the votes given by a user id (paginated)
-    @Query("SELECT NEW com.bharat.polls.model.ChoiceVoteCount(v.choice.id,count(v.id)) FROM Vote v WHERE v.poll.id in :pollIds GROUP BY v.choice.id")
+    @Query("SELECT NEW com.bharat.polls.model.ChoiceVoteCount(v.poll.id,v.choice.id,count(v.id)) FROM Vote v WHERE v.poll.id in :pollIds GROUP BY v.poll.id,v.choice.id")
     List<ChoiceVoteCount> countByPollIdInGroupByChoiceId(@Param("pollIds") List<Long> pollIds);
 
     @Query("SELECT NEW com.bharat.polls.model.ChoiceVoteCount(v.choice.id,count(v.id)) FROM Vote v WHERE v.poll.id = :pollId GROUP BY v.choice.id")
@@ -34,6 +36,25 @@ public interface VoteRepository extends JpaRepository<Vote,Long> {
     @Query("SELECT count(v.id) FROM Vote v WHERE v.user.id = :userId")
     Long countByUserId(@Param("userId") Long userId);
 
-    @Query("SELECT v.poll.id FROM Vote v WHERE v.user.id = :userId")
+//    the ids of the polls a user voted in, most recent vote first, read from the (user_id, voted_at, poll_id) index
+    @Query(value = "SELECT v.poll.id FROM Vote v WHERE v.user.id = :userId ORDER BY v.votedAt DESC, v.poll.id DESC",
+            countQuery = "SELECT count(v.id) FROM Vote v WHERE v.user.id = :userId")
     Page<Long> findVotedPollIdsByUserId(@Param("userId") Long userId, Pageable pageable);
+
+//    first keyset page of (voted at, poll id) pairs, most recent vote first
+    @Query("SELECT v.votedAt, v.poll.id FROM Vote v WHERE v.user.id = :userId ORDER BY v.votedAt DESC, v.poll.id DESC")
+    List<Object[]> findVotesByUserIdOrderByVotedAtDesc(@Param("userId") Long userId, Pageable pageable);
+
+//    following keyset pages, continuing after the (voted at, poll id) position of the previous page's last vote
+    @Query("SELECT v.votedAt, v.poll.id FROM Vote v WHERE v.user.id = :userId " +
+            "and (v.votedAt < :votedAt or (v.votedAt = :votedAt and v.poll.id < :pollId)) " +
+            "ORDER BY v.votedAt DESC, v.poll.id DESC")
+    List<Object[]> findVotesByUserIdBefore(@Param("userId") Long userId, @Param("votedAt") Instant votedAt,
+                                           @Param("pollId") Long pollId, Pageable pageable);
+
+//    returns 0 instead of failing when the user has already voted in the poll
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO votes (poll_id, user_id, choice_id, voted_at) VALUES (:pollId, :userId, :choiceId, :votedAt)", nativeQuery = true)
+    int insertIgnore(@Param("pollId") Long pollId, @Param("userId") Long userId, @Param("choiceId") Long choiceId,
+                     @Param("votedAt") Instant votedAt);
 }
@@ -0,0 +1,186 @@
+package com.bharat.polls.service;
+
+import com.bharat.polls.exceptions.BadRequestException;
+import com.bharat.polls.model.PollMetadata;
+import com.bharat.polls.model.VoteRecord;
+import com.bharat.polls.payload.BulkVoteRecord;
+import com.bharat.polls.payload.BulkVoteResponse;
+import com.bharat.polls.payload.BulkVoteResult.Status;
+import com.bharat.polls.repository.UserRepository;
+import com.bharat.polls.repository.VoteJdbcRepository;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Imports votes collected offline, e.g. by polling kiosks.
+ *
+ * The upload is read as a stream (a JSON array or newline separated JSON objects) and handled in chunks, so memory
+ * does not grow with the size of the upload. Each chunk is validated against the cached metadata of the polls it
+ * references and written with the batched JDBC vote writer.
+ */
+@Service
+public class BulkVoteService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkVoteService.class);
+
+    private static final int CHUNK_SIZE = 1000;
+
+    // Kiosk clocks are not trusted to be exact, but votes from the future are still rejected.
+    private static final Duration MAX_CLOCK_SKEW = Duration.ofMinutes(5);
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PollMetadataCache pollMetadataCache;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private VoteJdbcRepository voteJdbcRepository;
+
+    @Autowired
+    private VoteTallyService voteTallyService;
+
+    @Autowired
+    private VoteDuplicateFilter voteDuplicateFilter;
+
+    @Autowired
+    private UserStatsService userStatsService;
+
+    @Autowired
+    private TrendingService trendingService;
+
+    @Autowired
+    private FinalResultsService finalResultsService;
+
+    public BulkVoteResponse importVotes(InputStream input){
+        BulkVoteResponse response = new BulkVoteResponse();
+        List<BulkVoteRecord> chunk = new ArrayList<>(CHUNK_SIZE);
+
+        try (MappingIterator<BulkVoteRecord> records = objectMapper.readerFor(BulkVoteRecord.class).readValues(input)) {
+            while(records.hasNextValue()){
+                chunk.add(records.nextValue());
+                if(chunk.size() == CHUNK_SIZE){
+                    importChunk(chunk,response);
+                    chunk.clear();
+                }
+            }
+        } catch (IOException ex){
+            throw new BadRequestException("Malformed vote record after "+(response.getReceived()+chunk.size())
+                    +" records; the first "+response.getReceived()+" were imported",ex);
+        }
+
+        if(!chunk.isEmpty()){
+            importChunk(chunk,response);
+        }
+
+        logger.info("Imported {} of {} uploaded votes",response.getAccepted(),response.getReceived());
+        return response;
+    }
+
+    private void importChunk(List<BulkVoteRecord> records, BulkVoteResponse response){
+        Map<Long,PollMetadata> polls = findPolls(records);
+        Set<Long> userIds = findExistingUserIds(records);
+        Instant now = Instant.now();
+
+        Status[] statuses = new Status[records.size()];
+        List<VoteRecord> votes = new ArrayList<>(records.size());
+        List<Integer> positions = new ArrayList<>(records.size());
+
+        for(int i=0;i<records.size();i++){
+            BulkVoteRecord record = records.get(i);
+            statuses[i] = validate(record,polls,userIds,now);
+            if(statuses[i] == null){
+                votes.add(new VoteRecord(record.getPollId(),record.getUserId(),record.getChoiceId(),record.getTimestamp()));
+                positions.add(i);
+            }
+        }
+
+        boolean[] inserted = votes.isEmpty() ? new boolean[0] : voteTallyService.writeVotes(polls.keySet(),() -> {
+            boolean[] stored = voteJdbcRepository.insertAll(votes);
+            for(int j=0;j<votes.size();j++){
+                if(stored[j]){
+                    voteTallyService.increment(votes.get(j).getPollId(),votes.get(j).getChoiceId());
+                }
+            }
+            return stored;
+        });
+        for(int j=0;j<votes.size();j++){
+            VoteRecord vote = votes.get(j);
+            statuses[positions.get(j)] = inserted[j] ? Status.ACCEPTED : Status.DUPLICATE;
+            if(inserted[j]){
+                userStatsService.evict(vote.getUserId());
+                trendingService.recordVote(vote.getPollId(),vote.getVotedAt());
+            }
+            voteDuplicateFilter.recordVoter(vote.getPollId(),vote.getUserId());
+        }
+
+        long firstIndex = response.getReceived();
+        for(int i=0;i<statuses.length;i++){
+            response.addResult(firstIndex+i,statuses[i]);
+        }
+    }
+
+    /**
+     * @return the reason the record cannot be imported, or null if it can be written
+     */
+    private Status validate(BulkVoteRecord record, Map<Long,PollMetadata> polls, Set<Long> userIds, Instant now){
+        if(record.getPollId() == null || record.getUserId() == null || record.getChoiceId() == null
+                || record.getTimestamp() == null || record.getTimestamp().isAfter(now.plus(MAX_CLOCK_SKEW))){
+            return Status.INVALID;
+        }
+
+        PollMetadata poll = polls.get(record.getPollId());
+        if(poll == null){
+            return Status.POLL_NOT_FOUND;
+        }
+        if(!poll.hasChoice(record.getChoiceId())){
+            return Status.CHOICE_NOT_FOUND;
+        }
+//        what counts is when the vote was cast, not when it reached us
+        if(poll.isExpiredAt(record.getTimestamp())){
+            return Status.POLL_EXPIRED;
+        }
+//        late uploads are only accepted until the poll's final results are frozen
+        if(finalResultsService.isFinal(poll,now)){
+            return Status.POLL_EXPIRED;
+        }
+        if(!userIds.contains(record.getUserId())){
+            return Status.USER_NOT_FOUND;
+        }
+        if(voteDuplicateFilter.isKnownVoter(record.getPollId(),record.getUserId())){
+            return Status.DUPLICATE;
+        }
+        return null;
+    }
+
+    private Map<Long,PollMetadata> findPolls(List<BulkVoteRecord> records){
+        List<Long> pollIds = records.stream().map(BulkVoteRecord::getPollId)
+                .filter(pollId -> pollId != null).distinct().collect(Collectors.toList());
+        return pollIds.isEmpty() ? new HashMap<>() : pollMetadataCache.getAll(pollIds);
+    }
+
+    private Set<Long> findExistingUserIds(List<BulkVoteRecord> records){
+        List<Long> userIds = records.stream().map(BulkVoteRecord::getUserId)
+                .filter(userId -> userId != null).distinct().collect(Collectors.toList());
+        return userIds.isEmpty() ? new HashSet<>() : new HashSet<>(userRepository.findIdsByIdIn(userIds));
+    }
+}
@@ -0,0 +1,190 @@
+package com.bharat.polls.service;
+
+import com.bharat.polls.exceptions.AppException;
+import com.bharat.polls.payload.PagedResponse;
+import com.bharat.polls.payload.PollResponse;
+import com.bharat.polls.repository.PollFeedRepository;
+import com.bharat.polls.repository.PollRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pre-rendered first pages of the anonymous poll feed (app.feedSnapshot.pages pages of app.feedSnapshot.pageSize).
+ *
+ * A background check rebuilds all pages when the snapshot is older than the refresh interval, when a poll has been
+ * created on this node (it shifts every page), or when the polls on the snapshot pages have taken at least
+ * app.feedSnapshot.changeThreshold votes, measured with their tally versions. Between rebuilds anonymous requests
+ * for these pages are answered with the stored bytes, and authenticated ones reuse the stored pages with only
+ * their own selectedChoice filled in, so the results shown can lag by up to one refresh.
+ */
+@Service
+public class FeedSnapshotService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FeedSnapshotService.class);
+
+    @Value("${app.feedSnapshot.enabled}")
+    private boolean enabled;
+
+    @Value("${app.feedSnapshot.pages}")
+    private int pages;
+
+    @Value("${app.feedSnapshot.pageSize}")
+    private int pageSize;
+
+    @Value("${app.feedSnapshot.refreshIntervalMs}")
+    private long refreshIntervalMs;
+
+    @Value("${app.feedSnapshot.changeThreshold}")
+    private long changeThreshold;
+
+    @Autowired
+    private PollFeedRepository pollFeedRepository;
+
+    @Autowired
+    private PollRepository pollRepository;
+
+    @Autowired
+    private FinalResultsService finalResultsService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private volatile Snapshot snapshot;
+
+    private final AtomicLong pollsCreated = new AtomicLong();
+
+    /**
+     * @return the pre-rendered page, or null if this page is not part of the snapshot
+     */
+    public FeedPage getPage(int page, int size){
+        Snapshot current = snapshot;
+        if(current == null || size != pageSize || page < 0 || page >= current.pages.size()){
+            return null;
+        }
+        return current.pages.get(page);
+    }
+
+    public void pollCreated(){
+        pollsCreated.incrementAndGet();
+    }
+
+    @Scheduled(fixedDelayString = "${app.feedSnapshot.checkIntervalMs}")
+    public void refresh(){
+        if(!enabled){
+            return;
+        }
+
+        Snapshot current = snapshot;
+        long createdSoFar = pollsCreated.get();
+        if(current != null && !isStale(current,createdSoFar)){
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        snapshot = build(createdSoFar);
+        logger.debug("Rebuilt the feed snapshot in {} ms",System.currentTimeMillis()-start);
+    }
+
+    private boolean isStale(Snapshot current, long createdSoFar){
+        if(System.currentTimeMillis()-current.builtAt >= refreshIntervalMs || createdSoFar != current.pollsCreated){
+            return true;
+        }
+        if(current.pollIds.isEmpty()){
+            return false;
+        }
+        long versions = sum(finalResultsService.getVersions(current.pollIds));
+        return versions-current.versions >= changeThreshold;
+    }
+
+    private Snapshot build(long createdSoFar){
+        long totalElements = pollRepository.count();
+        int totalPages = (int) Math.ceil((double) totalElements/pageSize);
+
+        List<FeedPage> feedPages = new ArrayList<>(pages);
+        List<Long> pollIds = new ArrayList<>();
+        for(int page=0;page<pages;page++){
+            List<PollResponse> polls = pollFeedRepository.findPage(null,(long) page*pageSize,pageSize);
+            finalResultsService.applyTo(polls);
+            polls = Collections.unmodifiableList(polls);
+            polls.forEach(poll -> pollIds.add(poll.getId()));
+            feedPages.add(new FeedPage(new PagedResponse<>(polls,page,pageSize,totalElements,totalPages,page+1 >= totalPages)));
+        }
+
+//        votes landing while the pages are read can slip past the threshold; the refresh interval still covers them
+        long versions = pollIds.isEmpty() ? 0 : sum(finalResultsService.getVersions(pollIds));
+        return new Snapshot(Collections.unmodifiableList(feedPages),pollIds,versions,createdSoFar);
+    }
+
+    private static long sum(Map<Long,Long> versions){
+        return versions.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    private class Snapshot {
+
+        private final List<FeedPage> pages;
+
+        private final List<Long> pollIds;
+
+        private final long versions;
+
+        private final long pollsCreated;
+
+        private final long builtAt = System.currentTimeMillis();
+
+        Snapshot(List<FeedPage> pages, List<Long> pollIds, long versions, long pollsCreated) {
+            this.pages = pages;
+            this.pollIds = pollIds;
+            this.versions = versions;
+            this.pollsCreated = pollsCreated;
+        }
+    }
+
+    /**
+     * One pre-rendered page. The {@link PollResponse}s are shared and must not be modified; copy them to overlay
+     * per-user fields.
+     */
+    public class FeedPage {
+
+        private final PagedResponse<PollResponse> page;
+
+        private final byte[] json;
+
+        private final String eTag;
+
+        FeedPage(PagedResponse<PollResponse> page) {
+            this.page = page;
+            try {
+                this.json = objectMapper.writeValueAsBytes(page);
+            } catch (JsonProcessingException ex){
+                throw new AppException("Could not serialize the poll feed",ex);
+            }
+            this.eTag = DigestUtils.md5DigestAsHex(json);
+        }
+
+        public PagedResponse<PollResponse> getPage() {
+            return page;
+        }
+
+        // shared as well; written to the response as is
+        public byte[] getJson() {
+            return json;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.bharat.polls.service;
+
+import com.bharat.polls.model.ChoiceVoteCount;
+import com.bharat.polls.model.PollMetadata;
+import com.bharat.polls.model.PollResult;
+import com.bharat.polls.payload.ChoiceResponse;
+import com.bharat.polls.payload.PollResponse;
+import com.bharat.polls.repository.PollRepository;
+import com.bharat.polls.repository.PollResultRepository;
+import com.bharat.polls.repository.VoteRepository;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Final results of expired polls.
+ *
+ * Once a poll has been expired for longer than app.finalResults.freezeDelayMs (time for in-flight and offline kiosk
+ * votes to arrive) no vote can change it any more. A scheduled job counts each such poll's votes exactly once and
+ * stores the result in poll_results; the first node to insert a poll's row wins, the others' INSERT IGNOREs are
+ * no-ops. Frozen results are then served from a size-bounded cache without expiry, and the poll is dropped from
+ * the in-memory tally and duplicate filter of every node.
+ *
+ * {@link #getChoiceVoteCounts(List)} and {@link #getVersions(List)} are the read path for counts and versions of any
+ * poll: frozen results for final polls, the live tally for the rest.
+ */
+@Service
+public class FinalResultsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FinalResultsService.class);
+
+    private static final int FREEZE_CHUNK_SIZE = 500;
+
+    private static final String UNFROZEN_POLLS_SQL = "SELECT p.id FROM polls p LEFT JOIN poll_results r ON r.poll_id = p.id " +
+            "WHERE p.expiration_date_time < ? AND r.poll_id IS NULL ORDER BY p.id LIMIT ?";
+
+    private static final String INSERT_RESULT_SQL = "INSERT IGNORE INTO poll_results " +
+            "(poll_id, version, total_votes, vote_counts, frozen_at) VALUES (?, ?, ?, ?, ?)";
+
+    @Value("${app.finalResults.freezeDelayMs}")
+    private long freezeDelayMs;
+
+    @Value("${app.finalResults.maxEntries}")
+    private long maxEntries;
+
+    @Autowired
+    private PollResultRepository pollResultRepository;
+
+    @Autowired
+    private PollRepository pollRepository;
+
+    @Autowired
+    private VoteRepository voteRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PollMetadataCache pollMetadataCache;
+
+    @Autowired
+    private VoteTallyService voteTallyService;
+
+    @Autowired
+    private VoteDuplicateFilter voteDuplicateFilter;
+
+    private LoadingCache<Long, PollResult> results;
+
+    @PostConstruct
+    void init(){
+//        only frozen results are cached; a poll that is not frozen yet is simply looked up again
+        results = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .build(new CacheLoader<Long, PollResult>() {
+                    @Override
+                    public PollResult load(Long pollId) {
+                        return pollResultRepository.findById(pollId).orElse(null);
+                    }
+
+                    @Override
+                    public Map<Long, PollResult> loadAll(Iterable<? extends Long> pollIds) {
+                        List<Long> ids = new ArrayList<>();
+                        pollIds.forEach(ids::add);
+                        return pollResultRepository.findByPollIdIn(ids).stream()
+                                .collect(Collectors.toMap(PollResult::getPollId,result -> result));
+                    }
+                });
+    }
+
+    /**
+     * @return true once the poll's result can no longer change and is (or is about to be) frozen
+     */
+    public boolean isFinal(PollMetadata poll, Instant now){
+        return poll.isExpiredAt(now.minusMillis(freezeDelayMs));
+    }
+
+    /**
+     * @return the frozen results of those of the given polls that have one
+     */
+    public Map<Long, PollResult> getAll(List<Long> pollIds){
+        Instant now = Instant.now();
+        List<Long> finalPollIds = pollMetadataCache.getAll(pollIds).values().stream()
+                .filter(poll -> isFinal(poll,now)).map(PollMetadata::getId).collect(Collectors.toList());
+        return finalPollIds.isEmpty() ? Collections.emptyMap() : results.getAll(finalPollIds);
+    }
+
+    /**
+     * @return vote count by choice id for the given polls, like {@link VoteTallyService#getChoiceVoteCounts(List)}
+     */
+    public Map<Long,Long> getChoiceVoteCounts(List<Long> pollIds){
+        Map<Long, PollResult> frozen = getAll(pollIds);
+        List<Long> live = withoutFrozen(pollIds,frozen);
+
+        Map<Long,Long> counts = live.isEmpty() ? new HashMap<>() : voteTallyService.getChoiceVoteCounts(live);
+        frozen.values().forEach(result -> counts.putAll(result.getChoiceVoteCounts()));
+        return counts;
+    }
+
+    /**
+     * @return the version of each of the given polls, like {@link VoteTallyService#getVersions(List)}
+     */
+    public Map<Long,Long> getVersions(List<Long> pollIds){
+        Map<Long, PollResult> frozen = getAll(pollIds);
+        List<Long> live = withoutFrozen(pollIds,frozen);
+
+        Map<Long,Long> versions = live.isEmpty() ? new HashMap<>() : voteTallyService.getVersions(live);
+        frozen.values().forEach(result -> versions.put(result.getPollId(),result.getVersion()));
+        return versions;
+    }
+
+    /**
+     * Replaces the counts of frozen polls in responses that were built from the stored vote_count columns.
+     */
+    public void applyTo(List<PollResponse> polls){
+        if(polls.isEmpty()){
+            return;
+        }
+        Map<Long, PollResult> frozen = getAll(polls.stream().map(PollResponse::getId).collect(Collectors.toList()));
+        if(frozen.isEmpty()){
+            return;
+        }
+
+        for(PollResponse poll : polls){
+            PollResult result = frozen.get(poll.getId());
+            if(result == null){
+                continue;
+            }
+            Map<Long,Long> counts = result.getChoiceVoteCounts();
+            for(ChoiceResponse choice : poll.getChoices()){
+                choice.setVoteCount(counts.getOrDefault(choice.getId(),0L));
+            }
+            poll.setTotalVotes(result.getTotalVotes());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.finalResults.freezeIntervalMs}")
+    public void freezeExpiredPolls(){
+        Instant now = Instant.now();
+        Timestamp cutoff = Timestamp.from(now.minusMillis(freezeDelayMs));
+
+        int frozen = 0;
+        List<Long> pollIds;
+        do {
+            pollIds = jdbcTemplate.queryForList(UNFROZEN_POLLS_SQL,Long.class,cutoff,FREEZE_CHUNK_SIZE);
+            if(!pollIds.isEmpty()){
+                frozen += freeze(pollIds,now);
+            }
+        } while(pollIds.size() == FREEZE_CHUNK_SIZE);
+
+        if(frozen > 0){
+            logger.info("Froze the final results of {} expired polls",frozen);
+        }
+        evictFinalPolls(now);
+    }
+
+    private int freeze(List<Long> pollIds, Instant now){
+        Map<Long,Long> versions = new HashMap<>();
+        pollRepository.findVersionsByIdIn(pollIds).forEach(row -> versions.put((Long) row[0],(Long) row[1]));
+
+        Map<Long,Long> counted = new HashMap<>();
+        for(ChoiceVoteCount count : voteRepository.countByPollIdInGroupByChoiceId(pollIds)){
+            counted.put(count.getChoiceId(),count.getVoteCount());
+        }
+        Map<Long, PollMetadata> polls = pollMetadataCache.getAll(pollIds);
+
+        List<Object[]> rows = new ArrayList<>(pollIds.size());
+        for(Long pollId : pollIds){
+//            every selected poll gets a row, even one without choices, so the job never picks it up again
+            Map<Long,Long> choiceVoteCounts = new LinkedHashMap<>();
+            PollMetadata poll = polls.get(pollId);
+            if(poll != null){
+                for(long choiceId : poll.getChoiceIds()){
+                    choiceVoteCounts.put(choiceId,counted.getOrDefault(choiceId,0L));
+                }
+            }
+            long totalVotes = choiceVoteCounts.values().stream().mapToLong(Long::longValue).sum();
+            rows.add(new Object[]{pollId,versions.getOrDefault(pollId,0L),totalVotes,
+                    PollResult.encodeVoteCounts(choiceVoteCounts),Timestamp.from(now)});
+        }
+
+        int inserted = 0;
+        for(int count : jdbcTemplate.batchUpdate(INSERT_RESULT_SQL,rows)){
+            inserted += count != 0 ? 1 : 0;
+        }
+        return inserted;
+    }
+
+    // Runs on every node, whoever froze the polls.
+    private void evictFinalPolls(Instant now){
+        List<Long> tracked = new ArrayList<>(voteTallyService.getTrackedPollIds());
+        tracked.addAll(voteDuplicateFilter.getTrackedPollIds());
+        if(tracked.isEmpty()){
+            return;
+        }
+
+        pollMetadataCache.getAll(tracked.stream().distinct().collect(Collectors.toList())).values().stream()
+                .filter(poll -> isFinal(poll,now))
+                .forEach(poll -> {
+                    voteTallyService.evict(poll.getId());
+                    voteDuplicateFilter.forgetPoll(poll.getId());
+                });
+    }
+
+    private static List<Long> withoutFrozen(List<Long> pollIds, Map<Long, PollResult> frozen){
+        if(frozen.isEmpty()){
+            return pollIds;
+        }
+        return pollIds.stream().filter(pollId -> !frozen.containsKey(pollId)).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,42 @@
+package com.bharat.polls.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Moves the id_generators rows used by {@link com.bharat.polls.model.Poll} and {@link com.bharat.polls.model.Choice}
+ * past the highest id already in their tables, so blocks handed out after switching from IDENTITY (or after rows
+ * were written by other means) never collide with existing rows. Runs at startup, once Hibernate has created the
+ * table, and only ever raises the stored value, so it is safe with several nodes starting at once.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class IdGeneratorSeeder {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdGeneratorSeeder.class);
+
+    private static final String SEED_SQL = "INSERT INTO id_generators (name, next_val) " +
+            "SELECT ?, COALESCE(MAX(id),0)+1 FROM %s " +
+            "ON DUPLICATE KEY UPDATE next_val = GREATEST(next_val, VALUES(next_val))";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    void seed(){
+        seed("polls","polls");
+        seed("choices","choices");
+    }
+
+    private void seed(String segment, String table){
+        jdbcTemplate.update(String.format(SEED_SQL,table),segment);
+        Long next = jdbcTemplate.queryForObject("SELECT next_val FROM id_generators WHERE name = ?",Long.class,segment);
+        logger.info("Next {} id block starts at {}",segment,next);
+    }
+}
@@ -0,0 +1,94 @@
+package com.bharat.polls.service;
+
+import com.bharat.polls.model.PollMetadata;
+import com.bharat.polls.repository.PollRepository;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Size-bounded cache of {@link PollMetadata}, filled on first access (one id-only query per batch of misses) and
+ * eagerly when a poll is created. A poll's expiry, choices and creator never change, so entries need no expiry.
+ */
+@Service
+public class PollMetadataCache {
+
+    @Value("${app.pollMetadata.maxEntries}")
+    private long maxEntries;
+
+    @Autowired
+    private PollRepository pollRepository;
+
+    private LoadingCache<Long, PollMetadata> cache;
+
+    @PostConstruct
+    void init(){
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .build(new CacheLoader<Long, PollMetadata>() {
+                    @Override
+                    public PollMetadata load(Long pollId) {
+                        return loadAll(Collections.singletonList(pollId)).get(pollId);
+                    }
+
+                    @Override
+                    public Map<Long, PollMetadata> loadAll(Iterable<? extends Long> pollIds) {
+                        List<Long> ids = new ArrayList<>();
+                        pollIds.forEach(ids::add);
+                        return PollMetadataCache.this.loadAll(ids);
+                    }
+                });
+    }
+
+    public Optional<PollMetadata> get(Long pollId){
+        return Optional.ofNullable(cache.get(pollId));
+    }
+
+    /**
+     * @return metadata by poll id; ids of polls that do not exist are left out
+     */
+    public Map<Long, PollMetadata> getAll(List<Long> pollIds){
+        return cache.getAll(pollIds);
+    }
+
+    public void put(PollMetadata metadata){
+        cache.put(metadata.getId(),metadata);
+    }
+
+    private Map<Long, PollMetadata> loadAll(List<Long> pollIds){
+        Map<Long, PollMetadata> metadata = new HashMap<>();
+        List<Object[]> rows = pollRepository.findMetadataRowsByIdIn(pollIds);
+
+//        rows come ordered by poll, so each poll's choices are consecutive
+        int from = 0;
+        while(from < rows.size()){
+            Long pollId = (Long) rows.get(from)[0];
+            int to = from;
+            while(to < rows.size() && pollId.equals(rows.get(to)[0])){
+                to++;
+            }
+
+            long[] choiceIds = new long[to-from];
+            for(int i=from;i<to;i++){
+                choiceIds[i-from] = (Long) rows.get(i)[3];
+            }
+            Object[] first = rows.get(from);
+            metadata.put(pollId,new PollMetadata(pollId,(Instant) first[1],choiceIds,(Long) first[2]));
+            from = to;
+        }
+
+        return metadata;
+    }
+}
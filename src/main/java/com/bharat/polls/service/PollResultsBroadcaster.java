@@ -0,0 +1,534 @@
+package com.bharat.polls.service;
+
+import com.bharat.polls.exceptions.AppException;
+import com.bharat.polls.exceptions.BadRequestException;
+import com.bharat.polls.exceptions.ResourceNotFoundException;
+import com.bharat.polls.model.PollMetadata;
+import com.bharat.polls.payload.PollResults;
+import com.bharat.polls.payload.PollResultsDelta;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pushes live vote counts of polls to Server-Sent Events and WebSocket subscribers.
+ *
+ * Votes are not pushed one by one. A tick runs at most app.stream.maxUpdatesPerSecond times a second, compares the
+ * tally version of every poll that has subscribers with the last one sent, and for each changed poll serializes
+ * the update once: full results for SSE streams, a {@link PollResultsDelta} against the previous tick for
+ * WebSockets. That same payload is handed to all subscribers of the poll, so the cost of a tick depends on the
+ * number of changed polls, not on the number of subscribers.
+ *
+ * Each subscriber has a bounded buffer that a pool of sender threads drains, so the tick never waits on a socket.
+ * A subscriber whose buffer overflows is too slow to keep up and is disconnected; clients reconnect and start again
+ * from a fresh snapshot. When a poll expires its subscribers get the final update: SSE streams are then completed,
+ * WebSocket clients simply stop receiving frames for it.
+ */
+@Service
+public class PollResultsBroadcaster {
+
+    private static final Logger logger = LoggerFactory.getLogger(PollResultsBroadcaster.class);
+
+    @Value("${app.stream.bufferSize}")
+    private int bufferSize;
+
+    @Value("${app.stream.timeoutMs}")
+    private long timeoutMs;
+
+    @Value("${app.stream.senderThreads}")
+    private int senderThreads;
+
+    @Value("${app.stream.socketBufferSize}")
+    private int socketBufferSize;
+
+    @Value("${app.stream.maxPollsPerSocket}")
+    private int maxPollsPerSocket;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PollMetadataCache pollMetadataCache;
+
+    @Autowired
+    private VoteTallyService voteTallyService;
+
+    @Autowired
+    private FinalResultsService finalResultsService;
+
+    private final ConcurrentMap<Long, PollChannel> channels = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, SocketSubscriber> sockets = new ConcurrentHashMap<>();
+
+    private ExecutorService sender;
+
+    @PostConstruct
+    void start(){
+        sender = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable,"poll-results-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void stop(){
+        sender.shutdownNow();
+        channels.values().forEach(channel -> channel.subscribers.forEach(Subscriber::closeNow));
+        channels.clear();
+        sockets.clear();
+    }
+
+    /**
+     * Starts an SSE stream of the poll's results; the first event carries the current results.
+     */
+    public SseEmitter subscribe(Long pollId){
+        PollMetadata poll = pollMetadataCache.get(pollId).orElseThrow(() -> new ResourceNotFoundException("Poll","id",pollId));
+
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        StreamSubscriber subscriber = new StreamSubscriber(emitter);
+        emitter.onCompletion(() -> {
+            subscriber.closed = true;
+            unsubscribe(pollId,subscriber);
+        });
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(ex -> {
+            subscriber.closed = true;
+            unsubscribe(pollId,subscriber);
+        });
+
+        PollState state = currentStates(Collections.singletonList(poll)).get(0);
+        if(state.expired){
+            subscriber.enqueue(state.resultsJson(),true);
+        } else {
+            join(state,subscriber);
+        }
+        return emitter;
+    }
+
+    public void register(WebSocketSession session){
+        sockets.put(session.getId(),new SocketSubscriber(session));
+    }
+
+    public void unregister(WebSocketSession session){
+        SocketSubscriber subscriber = sockets.remove(session.getId());
+        if(subscriber != null){
+            subscriber.closed = true;
+            subscriber.pollIds.forEach(pollId -> unsubscribe(pollId,subscriber));
+        }
+    }
+
+    /**
+     * Adds polls to a WebSocket client's subscriptions. The client first gets a {@link PollResults} snapshot of each
+     * poll, then {@link PollResultsDelta} frames relative to it. Unknown poll ids are skipped.
+     */
+    public void subscribe(WebSocketSession session, List<Long> pollIds){
+        SocketSubscriber subscriber = sockets.get(session.getId());
+        if(subscriber == null || pollIds.isEmpty()){
+            return;
+        }
+
+        List<Long> newPollIds = new ArrayList<>();
+        pollIds.stream().distinct().filter(pollId -> pollId != null && !subscriber.pollIds.contains(pollId)).forEach(newPollIds::add);
+        if(subscriber.pollIds.size()+newPollIds.size() > maxPollsPerSocket){
+            throw new BadRequestException("A connection can watch at most "+maxPollsPerSocket+" polls");
+        }
+        if(newPollIds.isEmpty()){
+            return;
+        }
+
+        List<PollMetadata> polls = new ArrayList<>(pollMetadataCache.getAll(newPollIds).values());
+        for(PollState state : currentStates(polls)){
+            if(state.expired){
+                subscriber.enqueue(state.resultsMessage(),false);
+            } else {
+                subscriber.pollIds.add(state.poll.getId());
+                join(state,subscriber);
+            }
+        }
+    }
+
+    public void unsubscribe(WebSocketSession session, List<Long> pollIds){
+        SocketSubscriber subscriber = sockets.get(session.getId());
+        if(subscriber == null){
+            return;
+        }
+        pollIds.forEach(pollId -> {
+            if(subscriber.pollIds.remove(pollId)){
+                unsubscribe(pollId,subscriber);
+            }
+        });
+    }
+
+    @Scheduled(fixedRateString = "#{1000 / ${app.stream.maxUpdatesPerSecond}}")
+    public void broadcast(){
+        if(channels.isEmpty()){
+            return;
+        }
+
+        List<Long> pollIds = new ArrayList<>(channels.keySet());
+        Map<Long,Long> versions = voteTallyService.getVersions(pollIds);
+        Map<Long,Long> counts = voteTallyService.getChoiceVoteCounts(pollIds);
+        Instant now = Instant.now();
+
+        for(Long pollId : pollIds){
+            PollChannel channel = channels.get(pollId);
+            if(channel == null){
+                continue;
+            }
+            long version = versions.get(pollId);
+            boolean expired = channel.state.poll.isExpiredAt(now);
+
+            synchronized (channel){
+                PollState previous = channel.state;
+                if(version == previous.version && !expired){
+                    continue;
+                }
+                PollState state = new PollState(previous.poll,version,choiceCounts(previous.poll,counts),expired);
+                PollUpdate update = new PollUpdate(state,previous);
+                channel.state = state;
+                channel.expired = expired;
+                channel.subscribers.forEach(subscriber -> subscriber.offer(update));
+            }
+
+            if(expired){
+                channels.remove(pollId,channel);
+            }
+        }
+    }
+
+    // Snapshot and registration happen under the channel's lock, so the first delta a subscriber gets is exactly
+    // the one that follows its snapshot.
+    private void join(PollState current, Subscriber subscriber){
+        Long pollId = current.poll.getId();
+        channels.compute(pollId,(id,channel) -> {
+//            a channel the tick has just expired is on its way out; the next tick finishes the new one
+            if(channel == null || channel.expired){
+                channel = new PollChannel(current);
+            }
+            synchronized (channel){
+                subscriber.snapshot(channel.state);
+                channel.subscribers.add(subscriber);
+            }
+            return channel;
+        });
+    }
+
+    private void unsubscribe(Long pollId, Subscriber subscriber){
+        channels.computeIfPresent(pollId,(id,channel) -> {
+            channel.subscribers.remove(subscriber);
+            return channel.subscribers.isEmpty() ? null : channel;
+        });
+    }
+
+    // The versions are read before the counts, so a state never claims a newer version than its counts show.
+    private List<PollState> currentStates(List<PollMetadata> polls){
+        List<Long> pollIds = new ArrayList<>(polls.size());
+        polls.forEach(poll -> pollIds.add(poll.getId()));
+        if(pollIds.isEmpty()){
+            return Collections.emptyList();
+        }
+
+        Map<Long,Long> versions = finalResultsService.getVersions(pollIds);
+        Map<Long,Long> counts = finalResultsService.getChoiceVoteCounts(pollIds);
+        Instant now = Instant.now();
+
+        List<PollState> states = new ArrayList<>(polls.size());
+        polls.forEach(poll -> states.add(new PollState(poll,versions.get(poll.getId()),choiceCounts(poll,counts),poll.isExpiredAt(now))));
+        return states;
+    }
+
+    private static Map<Long,Long> choiceCounts(PollMetadata poll, Map<Long,Long> counts){
+        Map<Long,Long> choiceCounts = new LinkedHashMap<>();
+        for(long choiceId : poll.getChoiceIds()){
+            choiceCounts.put(choiceId,counts.getOrDefault(choiceId,0L));
+        }
+        return choiceCounts;
+    }
+
+    private String toJson(Object payload){
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException ex){
+            throw new AppException("Could not serialize poll results",ex);
+        }
+    }
+
+    private static class PollChannel {
+
+        private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+        // the last state sent to the subscribers; guarded by the channel's lock
+        private PollState state;
+
+        private volatile boolean expired;
+
+        PollChannel(PollState state) {
+            this.state = state;
+        }
+    }
+
+    /**
+     * Results of a poll at one version. The serialized forms are built on first use and then shared by every
+     * subscriber that is sent this state.
+     */
+    private class PollState {
+
+        private final PollMetadata poll;
+
+        private final long version;
+
+        private final Map<Long,Long> counts;
+
+        private final boolean expired;
+
+        private String resultsJson;
+
+        private TextMessage resultsMessage;
+
+        PollState(PollMetadata poll, long version, Map<Long, Long> counts, boolean expired) {
+            this.poll = poll;
+            this.version = version;
+            this.counts = counts;
+            this.expired = expired;
+        }
+
+        synchronized String resultsJson(){
+            if(resultsJson == null){
+                long totalVotes = counts.values().stream().mapToLong(Long::longValue).sum();
+                resultsJson = toJson(new PollResults(poll.getId(),version,counts,totalVotes,expired));
+            }
+            return resultsJson;
+        }
+
+        synchronized TextMessage resultsMessage(){
+            if(resultsMessage == null){
+                resultsMessage = new TextMessage(resultsJson());
+            }
+            return resultsMessage;
+        }
+    }
+
+    /**
+     * What one tick sends for a poll. Only touched by the tick thread.
+     */
+    private class PollUpdate {
+
+        private final PollState state;
+
+        private final PollState previous;
+
+        private TextMessage deltaMessage;
+
+        private boolean deltaBuilt;
+
+        PollUpdate(PollState state, PollState previous) {
+            this.state = state;
+            this.previous = previous;
+        }
+
+        /**
+         * @return the delta frame, or null when no count changed and there is nothing to tell
+         */
+        TextMessage deltaMessage(){
+            if(!deltaBuilt){
+                Map<Long,Long> deltas = new LinkedHashMap<>();
+                state.counts.forEach((choiceId,count) -> {
+                    long delta = count - previous.counts.getOrDefault(choiceId,0L);
+                    if(delta != 0){
+                        deltas.put(choiceId,delta);
+                    }
+                });
+                if(!deltas.isEmpty() || state.expired){
+                    deltaMessage = new TextMessage(toJson(new PollResultsDelta(state.poll.getId(),state.version,deltas,state.expired)));
+                }
+                deltaBuilt = true;
+            }
+            return deltaMessage;
+        }
+    }
+
+    /**
+     * Everything that writes to the connection runs on a sender thread, one drain at a time per subscriber, so a
+     * blocked socket only ever holds up its own subscriber.
+     */
+    private abstract class Subscriber implements Runnable {
+
+        private final BlockingQueue<Frame> buffer;
+
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        volatile boolean closed;
+
+        Subscriber(int capacity) {
+            this.buffer = new LinkedBlockingQueue<>(capacity);
+        }
+
+        abstract void snapshot(PollState state);
+
+        abstract void offer(PollUpdate update);
+
+        abstract void send(Object frame) throws IOException;
+
+        abstract void closeNow();
+
+        void enqueue(Object frame, boolean last){
+            if(closed){
+                return;
+            }
+            if(!buffer.offer(new Frame(frame,last))){
+                logger.debug("Dropping a live results subscriber that fell {} frames behind",buffer.size());
+                closed = true;
+            }
+            scheduleDrain();
+        }
+
+        private void scheduleDrain(){
+            if(draining.compareAndSet(false,true)){
+                try {
+                    sender.execute(this);
+                } catch (RejectedExecutionException ex){
+                    draining.set(false);
+                }
+            }
+        }
+
+        @Override
+        public void run(){
+            try {
+                Frame frame;
+                while(!closed && (frame = buffer.poll()) != null){
+                    send(frame.payload);
+                    if(frame.last){
+                        closed = true;
+                    }
+                }
+                if(closed){
+                    buffer.clear();
+                    closeNow();
+                }
+            } catch (IOException | IllegalStateException ex){
+//                the client went away; its connection's close callback cleans up
+                closed = true;
+                buffer.clear();
+            } finally {
+                draining.set(false);
+            }
+            if(!closed && !buffer.isEmpty()){
+                scheduleDrain();
+            }
+        }
+    }
+
+    private static class Frame {
+
+        private final Object payload;
+
+        private final boolean last;
+
+        Frame(Object payload, boolean last) {
+            this.payload = payload;
+            this.last = last;
+        }
+    }
+
+    private class StreamSubscriber extends Subscriber {
+
+        private final SseEmitter emitter;
+
+        StreamSubscriber(SseEmitter emitter) {
+            super(bufferSize);
+            this.emitter = emitter;
+        }
+
+        @Override
+        void snapshot(PollState state){
+            enqueue(state.resultsJson(),false);
+        }
+
+        @Override
+        void offer(PollUpdate update){
+            enqueue(update.state.resultsJson(),update.state.expired);
+        }
+
+        @Override
+        void send(Object frame) throws IOException {
+            emitter.send(SseEmitter.event().name(PollResults.TYPE).data(frame));
+        }
+
+        @Override
+        void closeNow(){
+            emitter.complete();
+        }
+    }
+
+    private class SocketSubscriber extends Subscriber {
+
+        private final WebSocketSession session;
+
+        private final Set<Long> pollIds = ConcurrentHashMap.newKeySet();
+
+        SocketSubscriber(WebSocketSession session) {
+            super(socketBufferSize);
+            this.session = session;
+        }
+
+        @Override
+        void snapshot(PollState state){
+            enqueue(state.resultsMessage(),false);
+        }
+
+        @Override
+        void offer(PollUpdate update){
+            TextMessage delta = update.deltaMessage();
+            if(delta != null){
+                enqueue(delta,false);
+            }
+            if(update.state.expired){
+                pollIds.remove(update.state.poll.getId());
+            }
+        }
+
+        @Override
+        void send(Object frame) throws IOException {
+            session.sendMessage((TextMessage) frame);
+        }
+
+        @Override
+        void closeNow(){
+            try {
+                session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (IOException ex){
+                logger.debug("Could not close live results socket {}",session.getId(),ex);
+            }
+        }
+    }
+}
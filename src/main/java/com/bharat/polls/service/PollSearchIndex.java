@@ -0,0 +1,369 @@
+package com.bharat.polls.service;
+
+import com.bharat.polls.exceptions.BadRequestException;
+import com.bharat.polls.exceptions.ServiceUnavailableException;
+import com.bharat.polls.util.PostingList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process inverted index over poll questions and choice texts.
+ *
+ * Text is split into lower-cased runs of letters and digits. Every term maps to a {@link PostingList} of the polls
+ * containing it, flagged with whether it occurs in the question, in a choice, or both. The index is rebuilt from the
+ * database once the application has started, id range by id range on a small thread pool, and polls created on
+ * this node are added as they are created; polls created on other nodes show up after the next restart.
+ *
+ * A search matches the polls containing every term of the query. Each term scores ln(1 + polls / polls with the
+ * term), doubled for a question match and once more for a choice match, and results come highest score first,
+ * newest first among equal scores. The cursor holds the (score, poll id) of the last result of a page.
+ */
+@Service
+public class PollSearchIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(PollSearchIndex.class);
+
+    private static final int IN_QUESTION = 1;
+
+    private static final int IN_CHOICE = 2;
+
+    private static final int MIN_TERM_LENGTH = 2;
+
+    private static final int MAX_TERM_LENGTH = 32;
+
+    private static final int MAX_QUERY_TERMS = 8;
+
+    private static final Comparator<Hit> WORST_FIRST = Comparator.<Hit>comparingLong(hit -> hit.score).thenComparingLong(hit -> hit.pollId);
+
+    @Value("${app.search.buildThreads}")
+    private int buildThreads;
+
+    @Value("${app.search.buildRangeSize}")
+    private long buildRangeSize;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Map<String, PostingList> index = new HashMap<>();
+
+    private long indexedPolls;
+
+    private boolean ready;
+
+    // polls created while the index is being built, added once it is in place
+    private final List<PendingPoll> pending = new ArrayList<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startBuild(){
+        Thread builder = new Thread(this::build,"poll-search-build");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    public void add(Long pollId, String question, Collection<String> choiceTexts){
+        lock.writeLock().lock();
+        try {
+            if(!ready){
+                pending.add(new PendingPoll(pollId,question,choiceTexts));
+                return;
+            }
+            addTo(index,pollId,termsOf(question,choiceTexts));
+            indexedPolls++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the ids of the best matching polls after the cursor, at most limit of them
+     */
+    public SearchHits search(String query, String cursor, int limit){
+        List<String> terms = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        if(terms.isEmpty()){
+            throw new BadRequestException("Search query must contain a word");
+        }
+        terms = terms.subList(0,Math.min(terms.size(),MAX_QUERY_TERMS));
+        Hit after = decodeCursor(cursor);
+
+        List<Hit> hits;
+        lock.readLock().lock();
+        try {
+            if(!ready){
+                throw new ServiceUnavailableException("Search is starting up. Please try again shortly.");
+            }
+            hits = topHits(terms,after,limit+1);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        String nextCursor = null;
+        if(hits.size() > limit){
+            hits = hits.subList(0,limit);
+            nextCursor = encodeCursor(hits.get(limit-1));
+        }
+        List<Long> pollIds = new ArrayList<>(hits.size());
+        hits.forEach(hit -> pollIds.add(hit.pollId));
+        return new SearchHits(pollIds,nextCursor);
+    }
+
+    private List<Hit> topHits(List<String> terms, Hit after, int count){
+        List<PostingList> lists = new ArrayList<>(terms.size());
+        for(String term : terms){
+            PostingList list = index.get(term);
+            if(list == null){
+                return Collections.emptyList();
+            }
+            lists.add(list);
+        }
+//        the shortest list drives the intersection, the others skip ahead to its ids
+        lists.sort(Comparator.comparingInt(PostingList::size));
+
+        PostingList.Cursor[] cursors = new PostingList.Cursor[lists.size()];
+        double[] weights = new double[lists.size()];
+        for(int i=0;i<lists.size();i++){
+            cursors[i] = lists.get(i).cursor();
+            weights[i] = Math.log(1+(double) indexedPolls/lists.get(i).size());
+        }
+
+        PriorityQueue<Hit> top = new PriorityQueue<>(count+1,WORST_FIRST);
+        candidates:
+        while(cursors[0].next()){
+            long pollId = cursors[0].getId();
+            double score = weights[0]*fieldWeight(cursors[0].getFlags());
+            for(int i=1;i<cursors.length;i++){
+                if(!cursors[i].advance(pollId)){
+                    break candidates;
+                }
+                if(cursors[i].getId() != pollId){
+                    continue candidates;
+                }
+                score += weights[i]*fieldWeight(cursors[i].getFlags());
+            }
+
+            Hit hit = new Hit(Math.round(score*1000),pollId);
+            if(after != null && WORST_FIRST.compare(hit,after) >= 0){
+                continue;
+            }
+            if(top.size() < count){
+                top.add(hit);
+            } else if(WORST_FIRST.compare(hit,top.peek()) > 0){
+                top.poll();
+                top.add(hit);
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>(top);
+        hits.sort(WORST_FIRST.reversed());
+        return hits;
+    }
+
+    private static int fieldWeight(int flags){
+        return ((flags & IN_QUESTION) != 0 ? 2 : 0) + ((flags & IN_CHOICE) != 0 ? 1 : 0);
+    }
+
+    private void build(){
+        long startedAt = System.currentTimeMillis();
+        long[] range = jdbcTemplate.queryForObject("SELECT COALESCE(MIN(id),1), COALESCE(MAX(id),0) FROM polls",
+                (rs,rowNum) -> new long[]{rs.getLong(1),rs.getLong(2)});
+
+        ExecutorService pool = Executors.newFixedThreadPool(buildThreads, runnable -> {
+            Thread thread = new Thread(runnable,"poll-search-build");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Map<String, PostingList> built = new HashMap<>();
+        long polls = 0;
+        try {
+            List<Future<RangeIndex>> parts = new ArrayList<>();
+            for(long start=range[0];start<=range[1];start+=buildRangeSize){
+                long from = start;
+                long to = Math.min(start+buildRangeSize-1,range[1]);
+                parts.add(pool.submit(() -> buildRange(from,to)));
+            }
+//            ranges are merged in id order, so every list is only ever appended to
+            for(Future<RangeIndex> part : parts){
+                RangeIndex rangeIndex = part.get();
+                rangeIndex.postings.forEach((term,list) -> built.computeIfAbsent(term,t -> new PostingList()).addAll(list));
+                polls += rangeIndex.polls;
+            }
+        } catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException ex){
+            logger.error("Failed to build the poll search index",ex.getCause());
+            return;
+        } finally {
+            pool.shutdownNow();
+        }
+        built.values().forEach(PostingList::trim);
+
+        lock.writeLock().lock();
+        try {
+            index = built;
+            indexedPolls = polls;
+            for(PendingPoll poll : pending){
+                addTo(index,poll.pollId,termsOf(poll.question,poll.choiceTexts));
+                indexedPolls++;
+            }
+            pending.clear();
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info("Indexed {} polls ({} terms) for search in {} ms",polls,built.size(),System.currentTimeMillis()-startedAt);
+    }
+
+    private RangeIndex buildRange(long from, long to){
+        TreeMap<Long, Map<String,Integer>> polls = new TreeMap<>();
+        jdbcTemplate.query("SELECT id, question FROM polls WHERE id BETWEEN ? AND ?", rs -> {
+            Map<String,Integer> terms = polls.computeIfAbsent(rs.getLong(1),id -> new HashMap<>());
+            tokenize(rs.getString(2)).forEach(term -> terms.merge(term,IN_QUESTION,(a,b) -> a | b));
+        },from,to);
+        jdbcTemplate.query("SELECT poll_id, text FROM choices WHERE poll_id BETWEEN ? AND ?", rs -> {
+            Map<String,Integer> terms = polls.get(rs.getLong(1));
+            if(terms != null){
+                tokenize(rs.getString(2)).forEach(term -> terms.merge(term,IN_CHOICE,(a,b) -> a | b));
+            }
+        },from,to);
+
+        RangeIndex rangeIndex = new RangeIndex(polls.size());
+        polls.forEach((pollId,terms) -> addTo(rangeIndex.postings,pollId,terms));
+        return rangeIndex;
+    }
+
+    private static void addTo(Map<String, PostingList> postings, Long pollId, Map<String,Integer> terms){
+        terms.forEach((term,flags) -> postings.computeIfAbsent(term,t -> new PostingList()).add(pollId,flags));
+    }
+
+    private static Map<String,Integer> termsOf(String question, Collection<String> choiceTexts){
+        Map<String,Integer> terms = new HashMap<>();
+        tokenize(question).forEach(term -> terms.merge(term,IN_QUESTION,(a,b) -> a | b));
+        choiceTexts.forEach(text -> tokenize(text).forEach(term -> terms.merge(term,IN_CHOICE,(a,b) -> a | b)));
+        return terms;
+    }
+
+    static List<String> tokenize(String text){
+        List<String> terms = new ArrayList<>();
+        if(text == null){
+            return terms;
+        }
+        StringBuilder term = new StringBuilder();
+        for(int i=0;i<=text.length();i++){
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if(Character.isLetterOrDigit(c)){
+                term.append(Character.toLowerCase(c));
+                continue;
+            }
+            if(term.length() >= MIN_TERM_LENGTH && term.length() <= MAX_TERM_LENGTH){
+                terms.add(term.toString());
+            }
+            term.setLength(0);
+        }
+        return terms;
+    }
+
+    private static String encodeCursor(Hit hit){
+        String raw = hit.score+":"+hit.pollId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Hit decodeCursor(String cursor){
+        if(cursor == null || cursor.isEmpty()){
+            return null;
+        }
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor),StandardCharsets.UTF_8).split(":",-1);
+            if(parts.length != 2){
+                throw new BadRequestException("Invalid page cursor");
+            }
+            return new Hit(Long.parseLong(parts[0]),Long.parseLong(parts[1]));
+        } catch (IllegalArgumentException ex){
+            throw new BadRequestException("Invalid page cursor");
+        }
+    }
+
+    public static class SearchHits {
+
+        private final List<Long> pollIds;
+
+        private final String nextCursor;
+
+        SearchHits(List<Long> pollIds, String nextCursor) {
+            this.pollIds = pollIds;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<Long> getPollIds() {
+            return pollIds;
+        }
+
+        public String getNextCursor() {
+            return nextCursor;
+        }
+    }
+
+    private static class Hit {
+
+        private final long score;
+
+        private final long pollId;
+
+        Hit(long score, long pollId) {
+            this.score = score;
+            this.pollId = pollId;
+        }
+    }
+
+    private static class RangeIndex {
+
+        private final Map<String, PostingList> postings = new HashMap<>();
+
+        private final long polls;
+
+        RangeIndex(long polls) {
+            this.polls = polls;
+        }
+    }
+
+    private static class PendingPoll {
+
+        private final Long pollId;
+
+        private final String question;
+
+        private final Collection<String> choiceTexts;
+
+        PendingPoll(Long pollId, String question, Collection<String> choiceTexts) {
+            this.pollId = pollId;
+            this.question = question;
+            this.choiceTexts = choiceTexts;
+        }
+    }
+}
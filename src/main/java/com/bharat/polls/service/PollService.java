@@ -3,32 +3,49 @@ package com.bharat.polls.service;
 import com.bharat.polls.exceptions.BadRequestException;
 import com.bharat.polls.exceptions.ResourceNotFoundException;
 import com.bharat.polls.model.*;
+import com.bharat.polls.payload.BulkPollResponse;
+import com.bharat.polls.payload.BulkPollResult;
+import com.bharat.polls.payload.CursorPagedResponse;
 import com.bharat.polls.payload.PagedResponse;
 import com.bharat.polls.payload.PollRequest;
 import com.bharat.polls.payload.PollResponse;
+import com.bharat.polls.payload.PollsByIdResponse;
+import com.bharat.polls.payload.UserSummary;
 import com.bharat.polls.payload.VoteRequest;
+import com.bharat.polls.repository.PollFeedRepository;
 import com.bharat.polls.repository.PollRepository;
 import com.bharat.polls.repository.UserRepository;
+import com.bharat.polls.repository.UserStatsRepository;
 import com.bharat.polls.repository.VoteRepository;
 import com.bharat.polls.security.UserPrincipal;
 import com.bharat.polls.util.AppConstants;
 import com.bharat.polls.util.ModelMapper;
+import com.bharat.polls.util.PageCursor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
-
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.DigestUtils;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 
@@ -38,12 +55,57 @@ public class PollService {
     @Autowired
     private PollRepository pollRepository;
 
+    @Autowired
+    private PollFeedRepository pollFeedRepository;
+
     @Autowired
     private UserRepository userRepository;
 
     @Autowired
     private VoteRepository voteRepository;
 
+    @Autowired
+    private VoteTallyService voteTallyService;
+
+    @Autowired
+    private VoteCountService voteCountService;
+
+    @Autowired
+    private VoteWriteBehindService voteWriteBehindService;
+
+    @Autowired
+    private VoteDuplicateFilter voteDuplicateFilter;
+
+    @Autowired
+    private PollMetadataCache pollMetadataCache;
+
+    @Autowired
+    private UserSummaryCache userSummaryCache;
+
+    @Autowired
+    private FeedSnapshotService feedSnapshotService;
+
+    @Autowired
+    private FinalResultsService finalResultsService;
+
+    @Autowired
+    private UserStatsRepository userStatsRepository;
+
+    @Autowired
+    private UserStatsService userStatsService;
+
+    @Autowired
+    private PollSearchIndex pollSearchIndex;
+
+    @Autowired
+    private TrendingService trendingService;
+
+    @Autowired
+    private ReadYourWritesService readYourWritesService;
+
+    @Autowired
+    private Validator validator;
+
     private static final Logger logger = LoggerFactory.getLogger(PollService.class);
 
     private void validatePageNumberAndSize(int page,int size){
@@ -56,44 +118,72 @@ public class PollService {
         }
     }
 
-    public PagedResponse<PollResponse> getAllPolls(UserPrincipal currentUser,int page,int size){
-        validatePageNumberAndSize(page,size);
+    private void validateCursorPageSize(int size){
+        if(size<1 || size> AppConstants.MAX_PAGE_SIZE){
+            throw new BadRequestException("Page size must be between 1 and "+AppConstants.MAX_PAGE_SIZE);
+        }
+    }
 
-        Pageable pageable = PageRequest.of(page,size, Sort.Direction.DESC,"createdAt");
-        Page<Poll> polls = pollRepository.findAll(pageable);
+    // cursors of the poll listings are (createdAt, id); one without a timestamp came from another listing
+    private PageCursor decodeTimestampCursor(String cursor){
+        PageCursor after = PageCursor.decode(cursor);
+        if(after != null && after.getTimestamp() == null){
+            throw new BadRequestException("Invalid page cursor");
+        }
+        return after;
+    }
 
-        if(polls.getNumberOfElements()==0){
-            return new PagedResponse<>(Collections.emptyList(),polls.getNumber(),
-                    polls.getSize(),polls.getTotalElements(),polls.getTotalPages(),polls.isLast());
+    /**
+     * Builds a page of the feed from what {@link #getFeedPage(UserPrincipal, int, int)} read for its ETag.
+     */
+    @Transactional(readOnly = true)
+    public PagedResponse<PollResponse> getAllPolls(UserPrincipal currentUser, FeedPageIds feedPage){
+        if(feedPage.snapshot != null){
+            return overlayUserVotes(feedPage.snapshot.getPage(),feedPage.userVotes);
         }
 
-//        for each pollId find how many votes are given to each choice of that particular poll
-        List<Long> pollIds = polls.map(Poll::getId).getContent();
-        Map<Long,Long> choiceVoteCountMap = getChoiceVoteCountMap(pollIds);
-//        to know that logged in user has done votes on which polls and what was the choice
-        Map<Long,Long> pollUserVoteMap = getPollUserVoteMap(currentUser,pollIds);
-//        getting map of userid and user object who have created the polls.
-        Map<Long,User> creatorMap = getPollCreatorMap(polls.getContent());
+//        one query builds the whole page (choices, stored counts, creator, current user's vote)
+        List<PollResponse> pollResponses = pollFeedRepository.findPolls(currentUser == null ? null : currentUser.getId(),
+                feedPage.pollIds);
+        finalResultsService.applyTo(pollResponses);
 
-        List<PollResponse> pollResponses = polls.map(poll -> {
-            return ModelMapper.mapPollToPollResponse(poll,
-                    choiceVoteCountMap,
-                    creatorMap.get(poll.getCreatedBy()),
-                    pollUserVoteMap == null ? null: pollUserVoteMap.getOrDefault(poll.getId(),null));
-        }).getContent();
+        int page = feedPage.page;
+        int size = feedPage.size;
+        int totalPages = size == 0 ? 1 : (int) Math.ceil((double) feedPage.totalElements/size);
+        return new PagedResponse<>(pollResponses,page,size,feedPage.totalElements,totalPages,page+1 >= totalPages);
+    }
 
-        return new PagedResponse<>(pollResponses,polls.getNumber(),polls.getSize(),
-                polls.getTotalElements(),polls.getTotalPages(),polls.isLast());
+    /**
+     * Keyset variant of {@link #getAllPolls(UserPrincipal, FeedPageIds)}, built from what
+     * {@link #getFeedPage(UserPrincipal, String, int)} read: no count query, and the cost of a page does not depend on
+     * how deep it is.
+     */
+    @Transactional(readOnly = true)
+    public CursorPagedResponse<PollResponse> getAllPollsAfter(UserPrincipal currentUser, FeedPageIds feedPage){
+        int size = feedPage.size;
+//        one extra id tells whether there is a next page
+        boolean hasNext = feedPage.pollIds.size() > size;
+        List<PollResponse> pollResponses = pollFeedRepository.findPolls(currentUser == null ? null : currentUser.getId(),
+                hasNext ? feedPage.pollIds.subList(0,size) : feedPage.pollIds);
+        finalResultsService.applyTo(pollResponses);
+
+        String nextCursor = null;
+        if(hasNext && !pollResponses.isEmpty()){
+            PollResponse last = pollResponses.get(pollResponses.size()-1);
+            nextCursor = new PageCursor(last.getCreationDateTime(),last.getId()).encode();
+        }
+        return new CursorPagedResponse<>(pollResponses,size,nextCursor);
     }
 
+    @Transactional(readOnly = true)
     public PagedResponse<PollResponse> getPollsVotedBy(String username, UserPrincipal currentUser, int page, int size){
 
         validatePageNumberAndSize(page,size);
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new ResourceNotFoundException("User","username",username));
 
-        Pageable pageable = PageRequest.of(page,size, Sort.Direction.DESC,"createdAt");
-        Page<Long> userVotedPollIds = voteRepository.findVotedPollIdsByUserId(user.getId(),pageable);
+//        the query orders by vote time itself
+        Page<Long> userVotedPollIds = voteRepository.findVotedPollIdsByUserId(user.getId(),PageRequest.of(page,size));
 
         if (userVotedPollIds.getNumberOfElements() == 0) {
             return new PagedResponse<>(Collections.emptyList(), userVotedPollIds.getNumber(),
@@ -101,20 +191,8 @@ public class PollService {
                     userVotedPollIds.getTotalPages(), userVotedPollIds.isLast());
         }
 
-        List<Long> pollIds = userVotedPollIds.getContent();
-        Sort sort = new Sort(Sort.Direction.DESC,"createdAt");
-        List<Poll> polls = pollRepository.findByIdIn(pollIds,sort);
-
-        Map<Long,Long> choiceVoteCountMap = getChoiceVoteCountMap(pollIds);
-        Map<Long,Long> pollUserVoteMap = getPollUserVoteMap(currentUser,pollIds);
-        Map<Long,User> creatorMap = getPollCreatorMap(polls);
-
-        List<PollResponse> pollResponses = polls.stream().map(poll -> {
-           return ModelMapper.mapPollToPollResponse(poll,
-                   choiceVoteCountMap,
-                   creatorMap.get(poll.getCreatedBy()),
-                   pollUserVoteMap == null?null: pollUserVoteMap.getOrDefault(poll.getId(),null));
-        }).collect(Collectors.toList());
+        List<Poll> polls = findPollsInOrder(userVotedPollIds.getContent());
+        List<PollResponse> pollResponses = mapPollsToPollResponses(polls,currentUser,getPollCreatorMap(polls));
 
         return new PagedResponse<>(pollResponses,userVotedPollIds.getNumber(),
                 userVotedPollIds.getSize(), userVotedPollIds.getTotalElements(),
@@ -122,6 +200,7 @@ public class PollService {
 
     }
 
+    @Transactional(readOnly = true)
     public PagedResponse<PollResponse> getPollsCreatedBy(String username, UserPrincipal currentUser, int page, int size){
         validatePageNumberAndSize(page, size);
 
@@ -141,11 +220,12 @@ public class PollService {
         List<Long> pollIds = polls.map(Poll::getId).getContent();
         Map<Long,Long> choiceVoteCountMap = getChoiceVoteCountMap(pollIds);
         Map<Long,Long> pollUserVoteMap = getPollUserVoteMap(currentUser,pollIds);
+        UserSummary creator = new UserSummary(user.getId(),user.getUsername(),user.getName());
 
         List<PollResponse> pollResponses = polls.map(poll -> {
             return ModelMapper.mapPollToPollResponse(poll,
                     choiceVoteCountMap,
-                    user,
+                    creator,
                     pollUserVoteMap == null ? null : pollUserVoteMap.getOrDefault(poll.getId(), null));
         }).getContent();
 
@@ -153,30 +233,165 @@ public class PollService {
                 polls.getTotalElements(),polls.getTotalPages(),polls.isLast());
     }
 
+    @Transactional(readOnly = true)
+    public CursorPagedResponse<PollResponse> getPollsVotedBy(String username, UserPrincipal currentUser, String cursor, int size){
+        validateCursorPageSize(size);
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new ResourceNotFoundException("User","username",username));
+
+        PageCursor after = decodeTimestampCursor(cursor);
+        Pageable pageable = PageRequest.of(0,size+1);
+        List<Object[]> votes = after == null
+                ? voteRepository.findVotesByUserIdOrderByVotedAtDesc(user.getId(),pageable)
+                : voteRepository.findVotesByUserIdBefore(user.getId(),after.getTimestamp(),after.getId(),pageable);
+
+        String nextCursor = null;
+        if(votes.size() > size){
+            votes = votes.subList(0,size);
+            Object[] last = votes.get(size-1);
+            nextCursor = new PageCursor((Instant) last[0],(Long) last[1]).encode();
+        }
+        if(votes.isEmpty()){
+            return new CursorPagedResponse<>(Collections.emptyList(),size,null);
+        }
+
+        List<Poll> polls = findPollsInOrder(votes.stream().map(vote -> (Long) vote[1]).collect(Collectors.toList()));
+        return new CursorPagedResponse<>(mapPollsToPollResponses(polls,currentUser,getPollCreatorMap(polls)),size,nextCursor);
+    }
+
+    @Transactional(readOnly = true)
+    public CursorPagedResponse<PollResponse> getPollsCreatedBy(String username, UserPrincipal currentUser, String cursor, int size){
+        validateCursorPageSize(size);
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new ResourceNotFoundException("User","username",username));
+
+        PageCursor after = decodeTimestampCursor(cursor);
+        Pageable pageable = PageRequest.of(0,size+1);
+        List<Poll> polls = after == null
+                ? pollRepository.findByCreatedByOrderByCreatedAtDescIdDesc(user.getId(),pageable)
+                : pollRepository.findByCreatedByBefore(user.getId(),after.getTimestamp(),after.getId(),pageable);
+
+        String nextCursor = null;
+        if(polls.size() > size){
+            polls = polls.subList(0,size);
+            Poll last = polls.get(size-1);
+            nextCursor = new PageCursor(last.getCreatedAt(),last.getId()).encode();
+        }
+        if(polls.isEmpty()){
+            return new CursorPagedResponse<>(Collections.emptyList(),size,null);
+        }
+
+        UserSummary creator = new UserSummary(user.getId(),user.getUsername(),user.getName());
+        return new CursorPagedResponse<>(mapPollsToPollResponses(polls,currentUser,Collections.singletonMap(user.getId(),creator)),
+                size,nextCursor);
+    }
+
+    /**
+     * @return up to size of the polls with the most recent votes, hottest first, as of the last ranking refresh
+     */
+    @Transactional(readOnly = true)
+    public List<PollResponse> getTrendingPolls(UserPrincipal currentUser, int size){
+        validateCursorPageSize(size);
+
+        List<Long> pollIds = trendingService.getTrendingPollIds(size);
+        if(pollIds.isEmpty()){
+            return Collections.emptyList();
+        }
+
+        List<Poll> polls = findPollsInOrder(pollIds);
+        return mapPollsToPollResponses(polls,currentUser,getPollCreatorMap(polls));
+    }
+
+    @Transactional(readOnly = true)
+    public CursorPagedResponse<PollResponse> searchPolls(UserPrincipal currentUser, String query, String cursor, int size){
+        validateCursorPageSize(size);
+
+        PollSearchIndex.SearchHits hits = pollSearchIndex.search(query,cursor,size);
+        if(hits.getPollIds().isEmpty()){
+            return new CursorPagedResponse<>(Collections.emptyList(),size,null);
+        }
+
+        List<Poll> polls = findPollsInOrder(hits.getPollIds());
+        return new CursorPagedResponse<>(mapPollsToPollResponses(polls,currentUser,getPollCreatorMap(polls)),size,hits.getNextCursor());
+    }
+
+    @Transactional
     public Poll createPoll(PollRequest pollRequest){
-        Poll poll = new Poll();
-        poll.setQuestion(pollRequest.getQuestion());
-        pollRequest.getChoices().forEach(choiceRequest -> {
-            poll.addChoice(new Choice(choiceRequest.getText()));
-        });
+        Poll saved = pollRepository.save(newPoll(pollRequest,Instant.now()));
+        pollsCreated(Collections.singletonList(saved));
+
+        return saved;
+    }
+
+    /**
+     * Creates the valid polls of the list in one transaction. Their ids are allocated in blocks up front, so
+     * Hibernate sends the polls and their choices as JDBC batches, which the driver rewrites into multi-row INSERTs.
+     * Invalid polls are reported and skipped.
+     */
+    @Transactional
+    public BulkPollResponse createPolls(List<PollRequest> pollRequests){
+        if(pollRequests.size() > AppConstants.MAX_BULK_POLLS){
+            throw new BadRequestException("At most "+AppConstants.MAX_BULK_POLLS+" polls can be created at once.");
+        }
 
         Instant now = Instant.now();
-        Instant expirationDateTime = now.plus(Duration.ofDays(pollRequest.getPollLength().getDays()))
-                .plus(Duration.ofHours(pollRequest.getPollLength().getHours()));
+        BulkPollResult[] results = new BulkPollResult[pollRequests.size()];
+        List<Poll> polls = new ArrayList<>(pollRequests.size());
+        List<Integer> positions = new ArrayList<>(pollRequests.size());
+
+        for(int i=0;i<pollRequests.size();i++){
+            PollRequest pollRequest = pollRequests.get(i);
+            String violation = pollRequest == null ? "poll: must not be null" : findViolation(pollRequest);
+            Poll poll = null;
+            if(violation == null){
+                poll = newPoll(pollRequest,now);
+                violation = findViolation(poll);
+            }
+            if(violation != null){
+                results[i] = new BulkPollResult(i,BulkPollResult.Status.INVALID,null,violation);
+                continue;
+            }
+            polls.add(poll);
+            positions.add(i);
+        }
 
-        poll.setExpirationDateTime(expirationDateTime);
+        List<Poll> saved = pollRepository.saveAll(polls);
+        for(int j=0;j<saved.size();j++){
+            results[positions.get(j)] = new BulkPollResult(positions.get(j),BulkPollResult.Status.CREATED,saved.get(j).getId(),null);
+        }
+        if(!saved.isEmpty()){
+            pollsCreated(saved);
+        }
+
+        BulkPollResponse response = new BulkPollResponse();
+        for(BulkPollResult result : results){
+            response.addResult(result);
+        }
+        return response;
+    }
+
+    /**
+     * @return the requested polls in the order asked for, each once, plus the ids that do not exist
+     */
+    @Transactional(readOnly = true)
+    public PollsByIdResponse getPollsById(List<Long> pollIds, UserPrincipal currentUser){
+        List<Long> ids = distinctPollIds(pollIds);
 
-        return pollRepository.save(poll);
+        List<Poll> polls = findPollsInOrder(ids);
+        List<PollResponse> pollResponses = polls.isEmpty() ? Collections.emptyList()
+                : mapPollsToPollResponses(polls,currentUser,getPollCreatorMap(polls));
+
+        Set<Long> found = polls.stream().map(Poll::getId).collect(Collectors.toSet());
+        List<Long> missingIds = ids.stream().filter(id -> !found.contains(id)).collect(Collectors.toList());
+        return new PollsByIdResponse(pollResponses,missingIds);
     }
 
+    @Transactional(readOnly = true)
     public PollResponse getPollById(Long pollId, UserPrincipal currentUser){
         Poll poll = pollRepository.findById(pollId).orElseThrow(() -> new ResourceNotFoundException("Poll","id",pollId));
 
-        List<ChoiceVoteCount> votes = voteRepository.countByPollIdGroupByChoiceId(pollId);
-        Map<Long,Long> choiceVoteCountMap = votes.stream().collect(
-                Collectors.toMap(ChoiceVoteCount::getChoiceId,ChoiceVoteCount::getVoteCount)
-        );
-        User creator = userRepository.findById(poll.getCreatedBy())
+        Map<Long,Long> choiceVoteCountMap = getChoiceVoteCountMap(Collections.singletonList(pollId));
+        UserSummary creator = userSummaryCache.get(poll.getCreatedBy())
                 .orElseThrow(() -> new ResourceNotFoundException("User","id",poll.getCreatedBy()));
 
         Vote userVote = null;
@@ -188,53 +403,243 @@ public class PollService {
         return ModelMapper.mapPollToPollResponse(poll,choiceVoteCountMap,creator,userVote==null ? null : userVote.getChoice().getId());
     }
 
+    /**
+     * @return an ETag for {@link #getPollById(Long, UserPrincipal)}, computed from in-memory state only
+     */
+    public String getPollETag(Long pollId, UserPrincipal currentUser){
+        pollMetadataCache.get(pollId).orElseThrow(() -> new ResourceNotFoundException("Poll","id",pollId));
+        return getPollsETag(currentUser,Collections.singletonList(pollId),"poll");
+    }
+
+    /**
+     * @return an ETag for {@link #getPollsById(List, UserPrincipal)}, computed from in-memory state only
+     */
+    public String getPollsByIdETag(List<Long> pollIds, UserPrincipal currentUser){
+        List<Long> ids = distinctPollIds(pollIds);
+        Map<Long,PollMetadata> metadata = pollMetadataCache.getAll(ids);
+//        only existing polls get a tally; the missing ones go into the tag as they are
+        List<Long> existing = ids.stream().filter(metadata::containsKey).collect(Collectors.toList());
+        List<Long> missing = ids.stream().filter(id -> !metadata.containsKey(id)).collect(Collectors.toList());
+        return getPollsETag(currentUser,existing,"polls:"+missing);
+    }
+
+    /**
+     * @return the ids of a page of the feed and its ETag; only the ids and the poll count are read from the database.
+     * Unless the ETag matches, pass it on to {@link #getAllPolls(UserPrincipal, FeedPageIds)}.
+     */
+    @Transactional(readOnly = true)
+    public FeedPageIds getFeedPage(UserPrincipal currentUser, int page, int size){
+        validatePageNumberAndSize(page,size);
+
+//        a pre-rendered page is only as fresh as the snapshot, so its tag must come from the snapshot too
+        FeedSnapshotService.FeedPage snapshot = feedSnapshotService.getPage(page,size);
+        if(snapshot != null){
+            if(currentUser == null){
+                return new FeedPageIds(snapshot.getETag(),snapshot,null);
+            }
+            List<Long> pollIds = snapshot.getPage().getContent().stream().map(PollResponse::getId).collect(Collectors.toList());
+            Map<Long,Long> userVotes = pollIds.isEmpty() ? Collections.emptyMap() : getPollUserVoteMap(currentUser,pollIds);
+            String state = snapshot.getETag()+"|"+currentUser.getId()+"|"+new TreeMap<>(userVotes);
+            return new FeedPageIds(DigestUtils.md5DigestAsHex(state.getBytes(StandardCharsets.UTF_8)),snapshot,userVotes);
+        }
+        long totalElements = pollRepository.count();
+        List<Long> pollIds = pollFeedRepository.findPageIds((long) page*size,size);
+        return new FeedPageIds(getPollsETag(currentUser,pollIds,"feed:"+totalElements),page,size,pollIds,totalElements);
+    }
+
+    /**
+     * Keyset variant of {@link #getFeedPage(UserPrincipal, int, int)}; pass the result on to
+     * {@link #getAllPollsAfter(UserPrincipal, FeedPageIds)}.
+     */
+    @Transactional(readOnly = true)
+    public FeedPageIds getFeedPage(UserPrincipal currentUser, String cursor, int size){
+        validateCursorPageSize(size);
+//        the extra id decides whether the page has a next cursor
+        List<Long> pollIds = pollFeedRepository.findPageIdsAfter(decodeTimestampCursor(cursor),size+1);
+        return new FeedPageIds(getPollsETag(currentUser,pollIds,"feed"),0,size,pollIds,0);
+    }
+
+    // Everything that can change in a poll response moves the poll's version, except the expired flag, which
+    // flips with the clock; the current user's vote bumps the version too, so the user id covers selectedChoice.
+    private String getPollsETag(UserPrincipal currentUser, List<Long> pollIds, String prefix){
+        Map<Long,Long> versions = pollIds.isEmpty() ? Collections.emptyMap() : finalResultsService.getVersions(pollIds);
+        Map<Long,PollMetadata> metadata = pollIds.isEmpty() ? Collections.emptyMap() : pollMetadataCache.getAll(pollIds);
+        Instant now = Instant.now();
+
+        StringBuilder state = new StringBuilder(prefix).append('|').append(currentUser == null ? "" : currentUser.getId());
+        for(Long pollId : pollIds){
+            PollMetadata poll = metadata.get(pollId);
+            state.append('|').append(pollId).append(':').append(versions.get(pollId))
+                    .append(poll != null && poll.isExpiredAt(now) ? ":x" : "");
+        }
+        return DigestUtils.md5DigestAsHex(state.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
     public PollResponse castVoteAndGetUpdatedPoll(Long pollId, VoteRequest voteRequest, UserPrincipal currentUser){
 
-        Poll poll = pollRepository.findById(pollId).orElseThrow(()-> new ResourceNotFoundException("Poll","id",pollId));
+        PollMetadata metadata = pollMetadataCache.get(pollId).orElseThrow(()-> new ResourceNotFoundException("Poll","id",pollId));
 
-        if(poll.getExpirationDateTime().isBefore(Instant.now())){
+        if(metadata.isExpiredAt(Instant.now())){
             throw new BadRequestException("Sorry! This poll has already expired.");
         }
 
-        User user = userRepository.getOne(currentUser.getId());
+        Long selectedChoice = voteRequest.getChoiceId();
+        if(!metadata.hasChoice(selectedChoice)){
+            throw new ResourceNotFoundException("Choice","id",selectedChoice);
+        }
 
-        Choice selectedChoice = poll.getChoices().stream().filter(choice->choice.getId().equals(voteRequest.getChoiceId()))
-                .findFirst().orElseThrow(()->new ResourceNotFoundException("Choice","id",voteRequest.getChoiceId()));
+        if(voteDuplicateFilter.isKnownVoter(pollId,currentUser.getId())){
+            logger.debug("User {} is known to have voted in Poll {}",currentUser.getId(),pollId);
+            throw new BadRequestException("User has already casted their vote in this poll.");
+        }
 
-        Vote vote = new Vote();
-        vote.setPoll(poll);
-        vote.setUser(user);
-        vote.setChoice(selectedChoice);
+        VoteRecord vote = new VoteRecord(pollId,currentUser.getId(),selectedChoice,Instant.now());
+        boolean inserted;
+        if(voteWriteBehindService.isEnabled()){
+//            the drainer counts the vote in the tally as soon as its batch commits
+            inserted = voteWriteBehindService.submit(vote);
+        } else {
+            inserted = voteTallyService.writeVotes(Collections.singletonList(pollId),() -> {
+                boolean stored = voteCountService.insertAndCount(vote);
+                if(stored){
+                    voteTallyService.increment(pollId,selectedChoice);
+                }
+                return stored;
+            });
+            if(inserted){
+                userStatsService.evict(currentUser.getId());
+            }
+        }
+        voteDuplicateFilter.recordVoter(pollId,currentUser.getId());
 
-        try{
-            vote = voteRepository.save(vote);
-        } catch (DataIntegrityViolationException ex){
+        if(!inserted){
             logger.info("User {} has already voted in Poll {}",currentUser.getId(),pollId);
             throw new BadRequestException("User has already casted their vote in this poll.");
         }
+        trendingService.recordVote(pollId,vote.getVotedAt());
+        readYourWritesService.recordWrite(currentUser.getId());
 
         // --> Vote is casted
 
         // Updating pollresponse now.
 
-        List<ChoiceVoteCount> votes = voteRepository.countByPollIdGroupByChoiceId(pollId);
-        Map<Long,Long> choiceVoteCountMap = votes.stream().collect(
-                Collectors.toMap(ChoiceVoteCount::getChoiceId,ChoiceVoteCount::getVoteCount)
-        );
-        User creator = userRepository.findById(poll.getCreatedBy())
+        Poll poll = pollRepository.findById(pollId).orElseThrow(()-> new ResourceNotFoundException("Poll","id",pollId));
+        Map<Long,Long> choiceVoteCountMap = voteTallyService.getChoiceVoteCounts(pollId);
+        UserSummary creator = userSummaryCache.get(poll.getCreatedBy())
                 .orElseThrow(() -> new ResourceNotFoundException("User","id",poll.getCreatedBy()));
 
-        return ModelMapper.mapPollToPollResponse(poll,choiceVoteCountMap,creator,vote.getChoice().getId());
+        return ModelMapper.mapPollToPollResponse(poll,choiceVoteCountMap,creator,selectedChoice);
 
     }
 
-    private Map<Long,Long> getChoiceVoteCountMap(List<Long> pollIds){
-        List<ChoiceVoteCount> votes = voteRepository.countByPollIdInGroupByChoiceId(pollIds);
-        Map<Long,Long> choiceVoteCount = votes.stream().collect(
-                Collectors.toMap(ChoiceVoteCount::getChoiceId,ChoiceVoteCount::getVoteCount)
-        );
+    private Poll newPoll(PollRequest pollRequest, Instant now){
+        Poll poll = new Poll();
+        poll.setQuestion(pollRequest.getQuestion());
+        pollRequest.getChoices().forEach(choiceRequest -> {
+            poll.addChoice(new Choice(choiceRequest.getText()));
+        });
+
+        Instant expirationDateTime = now.plus(Duration.ofDays(pollRequest.getPollLength().getDays()))
+                .plus(Duration.ofHours(pollRequest.getPollLength().getHours()));
 
-        return choiceVoteCount;
+        poll.setExpirationDateTime(expirationDateTime);
+        return poll;
+    }
+
+    // Everything that has to learn about new polls: profile counters, search, vote validation and the feed. Only
+    // the counters are written in the transaction; the in-memory state is updated once the polls are committed, so a
+    // rolled back insert leaves nothing behind.
+    private void pollsCreated(List<Poll> polls){
+        Map<Long,List<Poll>> byCreator = polls.stream().collect(Collectors.groupingBy(Poll::getCreatedBy));
+        byCreator.forEach((userId,created) -> {
+            Instant last = created.stream().map(Poll::getCreatedAt).max(Instant::compareTo).orElse(Instant.now());
+            userStatsRepository.incrementPollCount(userId,created.size(),last);
+        });
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                byCreator.keySet().forEach(userId -> {
+                    userStatsService.evict(userId);
+                    readYourWritesService.recordWrite(userId);
+                });
+
+                for(Poll poll : polls){
+                    pollSearchIndex.add(poll.getId(),poll.getQuestion(),
+                            poll.getChoices().stream().map(Choice::getText).collect(Collectors.toList()));
+                    pollMetadataCache.put(PollMetadata.of(poll));
+                    feedSnapshotService.pollCreated();
+                }
+            }
+        });
+    }
+
+    // the first constraint violation of a poll and its choices as "property: message", or null if it is valid
+    private String findViolation(Object bean){
+        Set<? extends ConstraintViolation<?>> violations = validator.validate(bean);
+        if(violations.isEmpty() && bean instanceof Poll){
+            for(Choice choice : ((Poll) bean).getChoices()){
+                violations = validator.validate(choice);
+                if(!violations.isEmpty()){
+                    break;
+                }
+            }
+        }
+        return violations.stream().findFirst()
+                .map(violation -> violation.getPropertyPath()+": "+violation.getMessage()).orElse(null);
+    }
+
+    // The requested ids without repeats, in the order first asked for, checked against MAX_POLLS_BY_ID.
+    private List<Long> distinctPollIds(List<Long> pollIds){
+        if(pollIds == null || pollIds.isEmpty()){
+            throw new BadRequestException("At least one poll id is required");
+        }
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(pollIds));
+        if(ids.contains(null)){
+            throw new BadRequestException("Poll ids must not be empty");
+        }
+        if(ids.size() > AppConstants.MAX_POLLS_BY_ID){
+            throw new BadRequestException("At most "+AppConstants.MAX_POLLS_BY_ID+" polls can be fetched at once");
+        }
+        return ids;
+    }
+
+    // Loads the polls keeping the order of the ids rather than any order of the polls themselves.
+    private List<Poll> findPollsInOrder(List<Long> pollIds){
+        Map<Long,Poll> pollsById = pollRepository.findByIdIn(pollIds).stream()
+                .collect(Collectors.toMap(Poll::getId,poll -> poll));
+        return pollIds.stream().map(pollsById::get).filter(poll -> poll != null).collect(Collectors.toList());
+    }
+
+    // The snapshot's responses are shared between requests, so the user's choices go into copies.
+    private PagedResponse<PollResponse> overlayUserVotes(PagedResponse<PollResponse> page, Map<Long,Long> pollUserVoteMap){
+        if(pollUserVoteMap == null || page.getContent().isEmpty()){
+            return page;
+        }
+
+        List<PollResponse> pollResponses = page.getContent().stream().map(poll -> {
+            PollResponse copy = ModelMapper.copyPollResponse(poll);
+            copy.setSelectedChoice(pollUserVoteMap.get(poll.getId()));
+            return copy;
+        }).collect(Collectors.toList());
+
+        return new PagedResponse<>(pollResponses,page.getPage(),page.getSize(),page.getTotalElements(),
+                page.getTotalPages(),page.isLast());
+    }
+
+    private List<PollResponse> mapPollsToPollResponses(List<Poll> polls, UserPrincipal currentUser, Map<Long,UserSummary> creatorMap){
+        List<Long> pollIds = polls.stream().map(Poll::getId).collect(Collectors.toList());
+        Map<Long,Long> choiceVoteCountMap = getChoiceVoteCountMap(pollIds);
+        Map<Long,Long> pollUserVoteMap = getPollUserVoteMap(currentUser,pollIds);
+
+        return polls.stream().map(poll -> ModelMapper.mapPollToPollResponse(poll,
+                choiceVoteCountMap,
+                creatorMap.get(poll.getCreatedBy()),
+                pollUserVoteMap == null ? null : pollUserVoteMap.get(poll.getId()))).collect(Collectors.toList());
+    }
+
+    private Map<Long,Long> getChoiceVoteCountMap(List<Long> pollIds){
+        return finalResultsService.getChoiceVoteCounts(pollIds);
     }
 
     private Map<Long,Long> getPollUserVoteMap(UserPrincipal currentUser, List<Long> pollIds){
@@ -250,13 +655,56 @@ public class PollService {
         return pollUserVoteMap;
     }
 
-    Map<Long, User> getPollCreatorMap(List<Poll> polls){
+    Map<Long, UserSummary> getPollCreatorMap(List<Poll> polls){
         List<Long> creatorIds = polls.stream().map(Poll::getCreatedBy).distinct().collect(Collectors.toList());
 
-        List<User> creators = userRepository.findByIdIn(creatorIds);
+        return userSummaryCache.getAll(creatorIds);
+    }
+
+    /**
+     * What a page of the feed is made of, as read for its ETag, so that building the page does not read it again and
+     * always matches the tag.
+     */
+    public static class FeedPageIds {
+
+        private final String eTag;
 
-        Map<Long,User> creatorMap = creators.stream().collect(Collectors.toMap(User::getId, Function.identity()));
+        private final int page;
 
-        return creatorMap;
+        private final int size;
+
+        private final List<Long> pollIds;
+
+        private final long totalElements;
+
+        // set instead of the ids when the page is served from the pre-rendered snapshot
+        private final FeedSnapshotService.FeedPage snapshot;
+
+        // the current user's choices on the snapshot's polls, or null for anonymous requests
+        private final Map<Long,Long> userVotes;
+
+        FeedPageIds(String eTag, int page, int size, List<Long> pollIds, long totalElements) {
+            this.eTag = eTag;
+            this.page = page;
+            this.size = size;
+            this.pollIds = pollIds;
+            this.totalElements = totalElements;
+            this.snapshot = null;
+            this.userVotes = null;
+        }
+
+        FeedPageIds(String eTag, FeedSnapshotService.FeedPage snapshot, Map<Long,Long> userVotes) {
+            this.eTag = eTag;
+            this.page = snapshot.getPage().getPage();
+            this.size = snapshot.getPage().getSize();
+            this.pollIds = null;
+            this.totalElements = snapshot.getPage().getTotalElements();
+            this.snapshot = snapshot;
+            this.userVotes = userVotes;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
     }
 }
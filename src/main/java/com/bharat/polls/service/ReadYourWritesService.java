@@ -0,0 +1,48 @@
+package com.bharat.polls.service;
+
+import com.bharat.polls.config.ReplicaRoutingDataSource;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers which users wrote something in the last app.datasource.readYourWritesMs, so that their requests read
+ * from the primary instead of a replica that may not have their vote or poll yet. The rest of the request that made
+ * the write is pinned to the primary right away; later requests are pinned by {@link
+ * com.bharat.polls.config.ReadYourWritesInterceptor}.
+ *
+ * Only requests served by this node know about the write; behind a load balancer without sticky sessions a user's
+ * next request may still read from a replica.
+ */
+@Service
+public class ReadYourWritesService {
+
+    @Value("${app.datasource.readYourWritesMs}")
+    private long windowMs;
+
+    @Value("${app.datasource.readYourWritesMaxUsers}")
+    private long maxUsers;
+
+    private Cache<Long, Boolean> recentWriters;
+
+    @PostConstruct
+    void init(){
+        recentWriters = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterWrite(windowMs, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    public void recordWrite(Long userId){
+        recentWriters.put(userId,Boolean.TRUE);
+        ReplicaRoutingDataSource.pinToPrimary();
+    }
+
+    public boolean isRecentWriter(Long userId){
+        return recentWriters.getIfPresent(userId) != null;
+    }
+}
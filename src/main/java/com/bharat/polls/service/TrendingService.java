@@ -0,0 +1,141 @@
+package com.bharat.polls.service;
+
+import com.bharat.polls.model.PollMetadata;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.Instant;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Ranks polls by recent vote velocity: every vote adds to its poll's score, and scores decay exponentially with a
+ * half-life of app.trending.halfLifeSeconds.
+ *
+ * Decay is applied forward from a fixed landmark time: a vote cast at t adds e^(lambda*(t - landmark)), so scores
+ * only ever grow and compare correctly at any moment, and a vote is a single add to its poll's adder. The landmark
+ * is moved up (rescaling every score) before the terms get too large for a double. Votes uploaded late count at
+ * their cast time.
+ *
+ * Once a refresh interval the scores are scanned into the top app.trending.maxPolls open polls, which requests read
+ * as an immutable snapshot; polls that have expired or whose score has decayed to next to nothing are dropped from
+ * the map. Each node ranks the votes it has seen itself.
+ */
+@Service
+public class TrendingService {
+
+    // rescale once a vote would be worth e^50
+    private static final double MAX_EXPONENT = 50;
+
+    private static final double MIN_SCORE = 0.01;
+
+    @Value("${app.trending.halfLifeSeconds}")
+    private long halfLifeSeconds;
+
+    @Value("${app.trending.maxPolls}")
+    private int maxPolls;
+
+    @Autowired
+    private PollMetadataCache pollMetadataCache;
+
+    private final ConcurrentMap<Long, DoubleAdder> scores = new ConcurrentHashMap<>();
+
+    // held shared by votes and exclusively while rescaling
+    private final ReadWriteLock landmarkLock = new ReentrantReadWriteLock();
+
+    private double lambda;
+
+    private volatile long landmark;
+
+    private volatile List<Long> leaders = Collections.emptyList();
+
+    @PostConstruct
+    void init(){
+        lambda = Math.log(2)/halfLifeSeconds;
+        landmark = Instant.now().getEpochSecond();
+    }
+
+    public void recordVote(Long pollId, Instant votedAt){
+        landmarkLock.readLock().lock();
+        try {
+            double weight = Math.exp(lambda*(votedAt.getEpochSecond()-landmark));
+            scores.computeIfAbsent(pollId,id -> new DoubleAdder()).add(weight);
+        } finally {
+            landmarkLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the ids of the top trending polls as of the last refresh, hottest first
+     */
+    public List<Long> getTrendingPollIds(int limit){
+        List<Long> current = leaders;
+        return current.size() <= limit ? current : current.subList(0,limit);
+    }
+
+    @Scheduled(fixedRateString = "${app.trending.refreshIntervalMs}")
+    public void refresh(){
+        long now = Instant.now().getEpochSecond();
+        if(lambda*(now-landmark) > MAX_EXPONENT){
+            rescale(now);
+        }
+
+        double floor = MIN_SCORE*Math.exp(lambda*(now-landmark));
+        PriorityQueue<Map.Entry<Long, Double>> top = new PriorityQueue<>(maxPolls+1,Map.Entry.comparingByValue());
+        List<Long> candidates = new ArrayList<>();
+        scores.forEach((pollId,adder) -> {
+            double score = adder.sum();
+            if(score < floor){
+                scores.remove(pollId,adder);
+                return;
+            }
+            top.add(new AbstractMap.SimpleImmutableEntry<>(pollId,score));
+            if(top.size() > maxPolls){
+                top.poll();
+            }
+        });
+        top.forEach(entry -> candidates.add(entry.getKey()));
+
+        Map<Long, PollMetadata> polls = pollMetadataCache.getAll(candidates);
+        Instant nowInstant = Instant.ofEpochSecond(now);
+        List<Map.Entry<Long, Double>> ranked = new ArrayList<>(top);
+        ranked.sort(Map.Entry.<Long, Double>comparingByValue().reversed());
+
+        List<Long> open = new ArrayList<>(ranked.size());
+        for(Map.Entry<Long, Double> entry : ranked){
+            PollMetadata poll = polls.get(entry.getKey());
+            if(poll == null || poll.isExpiredAt(nowInstant)){
+                scores.remove(entry.getKey());
+            } else {
+                open.add(entry.getKey());
+            }
+        }
+        leaders = Collections.unmodifiableList(open);
+    }
+
+    private void rescale(long now){
+        landmarkLock.writeLock().lock();
+        try {
+            double factor = Math.exp(-lambda*(now-landmark));
+            scores.values().forEach(adder -> {
+                double rescaled = adder.sumThenReset()*factor;
+                adder.add(rescaled);
+            });
+            landmark = now;
+        } finally {
+            landmarkLock.writeLock().unlock();
+        }
+    }
+}
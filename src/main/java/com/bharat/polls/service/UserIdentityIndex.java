@@ -0,0 +1,162 @@
+package com.bharat.polls.service;
+
+import com.bharat.polls.repository.UserRepository;
+import com.bharat.polls.util.BloomFilter;
+import com.bharat.polls.util.FingerprintSet;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Answers username and email availability checks of the signup form mostly from memory.
+ *
+ * Every normalized (trimmed, lower-cased) username and email is put in a {@link BloomFilter} and in an exact
+ * {@link FingerprintSet}. A name the small filter has never seen is available without touching the larger set; a
+ * filter hit that the set does not hold is a false positive and is available too, so no query is run for either.
+ * Only names the set holds, which are taken unless their fingerprint collides, are checked against the database,
+ * and names found taken are remembered in a bounded set so repeated keystrokes on a taken name do not query again.
+ * Until the first load has finished every check goes to the database.
+ *
+ * The filters are filled by a scheduled job that reads the users table in id order, in batches, starting after the
+ * last user it has seen; the first run loads everything and later runs pick up users registered on other nodes.
+ * Users registered on this node are added right away. Signup itself still checks the database.
+ */
+@Service
+public class UserIdentityIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserIdentityIndex.class);
+
+    private static final int LOAD_BATCH_SIZE = 5000;
+
+    private static final String USERS_AFTER_SQL = "SELECT id, username, email FROM users WHERE id > ? ORDER BY id LIMIT ?";
+
+    @Value("${app.identityIndex.expectedUsers}")
+    private long expectedUsers;
+
+    @Value("${app.identityIndex.falsePositiveRate}")
+    private double falsePositiveRate;
+
+    @Value("${app.identityIndex.maxConfirmed}")
+    private long maxConfirmed;
+
+    @Value("${app.identityIndex.confirmedTtlSeconds}")
+    private long confirmedTtlSeconds;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private BloomFilter usernames;
+
+    private BloomFilter emails;
+
+    private FingerprintSet usernameSet;
+
+    private FingerprintSet emailSet;
+
+    // "username:..." and "email:..." keys confirmed taken by the database
+    private Cache<String, Boolean> confirmedTaken;
+
+    private volatile boolean loaded;
+
+    private long lastUserId;
+
+    @PostConstruct
+    void init(){
+        usernames = new BloomFilter(expectedUsers,falsePositiveRate);
+        emails = new BloomFilter(expectedUsers,falsePositiveRate);
+        usernameSet = new FingerprintSet(expectedUsers);
+        emailSet = new FingerprintSet(expectedUsers);
+        confirmedTaken = Caffeine.newBuilder()
+                .maximumSize(maxConfirmed)
+                .expireAfterWrite(confirmedTtlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    @Transactional(readOnly = true)
+    public boolean isUsernameAvailable(String username){
+        String key = normalize(username);
+        if(loaded && (!usernames.mightContain(key) || !usernameSet.contains(key))){
+            return true;
+        }
+        return !isConfirmedTaken("username:"+key,() -> userRepository.existsByUsername(username));
+    }
+
+    @Transactional(readOnly = true)
+    public boolean isEmailAvailable(String email){
+        String key = normalize(email);
+        if(loaded && (!emails.mightContain(key) || !emailSet.contains(key))){
+            return true;
+        }
+        return !isConfirmedTaken("email:"+key,() -> userRepository.existsByEmail(email));
+    }
+
+    public void registered(String username, String email){
+        addUsername(normalize(username));
+        addEmail(normalize(email));
+    }
+
+    @Scheduled(fixedDelayString = "${app.identityIndex.refreshIntervalMs}")
+    public synchronized void refresh(){
+        long start = System.currentTimeMillis();
+        int added = 0;
+        int rows;
+        do {
+            rows = jdbcTemplate.query(USERS_AFTER_SQL, (rs,rowNum) -> {
+                addUsername(normalize(rs.getString(2)));
+                addEmail(normalize(rs.getString(3)));
+                lastUserId = rs.getLong(1);
+                return null;
+            },lastUserId,LOAD_BATCH_SIZE).size();
+            added += rows;
+        } while(rows == LOAD_BATCH_SIZE);
+
+        if(!loaded){
+            loaded = true;
+            logger.info("Loaded {} usernames and emails into the availability index in {} ms",
+                    added,System.currentTimeMillis()-start);
+        }
+    }
+
+    // the set first, so a name the filter lets through is never missing from the set
+    private void addUsername(String key){
+        usernameSet.add(key);
+        usernames.put(key);
+    }
+
+    private void addEmail(String key){
+        emailSet.add(key);
+        emails.put(key);
+    }
+
+    private boolean isConfirmedTaken(String key, BooleanSupplier exists){
+        if(confirmedTaken.getIfPresent(key) != null){
+            return true;
+        }
+//        only taken names are remembered; an available one can be registered at any moment
+        if(exists.getAsBoolean()){
+            confirmedTaken.put(key,Boolean.TRUE);
+            return true;
+        }
+        return false;
+    }
+
+    // MySQL compares these columns case-insensitively, so the filters do too
+    private static String normalize(String value){
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+}
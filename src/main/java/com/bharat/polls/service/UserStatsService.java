@@ -0,0 +1,120 @@
+package com.bharat.polls.service;
+
+import com.bharat.polls.model.UserStats;
+import com.bharat.polls.repository.UserStatsRepository;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the {@link UserStats} of the user profile from a cache in front of the user_stats table.
+ *
+ * The counters are incremented where polls and votes are written (see {@link com.bharat.polls.repository.UserStatsRepository}
+ * and {@link com.bharat.polls.repository.VoteJdbcRepository}); the writers evict the user's entry after
+ * writing, and changes made on other nodes show up when the entry expires. A scheduled job
+ * recomputes every row from the polls and votes tables, which both fills in users whose activity predates the
+ * table and repairs any drift. It walks the users table in id ranges, one statement per range. The job also runs once
+ * in the background at startup, and until a user has a row their counters are counted from the polls and votes
+ * tables directly, so profiles are right on a fresh table too.
+ */
+@Service
+public class UserStatsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserStatsService.class);
+
+    private static final long USER_ID_RANGE = 1000;
+
+    private static final String REBUILD_SQL = "INSERT INTO user_stats (user_id, poll_count, vote_count, last_activity_at) " +
+            "SELECT u.id, COALESCE(p.poll_count,0), COALESCE(v.vote_count,0), " +
+            "GREATEST(COALESCE(p.last_at,v.last_at), COALESCE(v.last_at,p.last_at)) FROM users u " +
+            "LEFT JOIN (SELECT created_by, COUNT(*) AS poll_count, MAX(created_at) AS last_at FROM polls " +
+            "WHERE created_by BETWEEN ? AND ? GROUP BY created_by) p ON p.created_by = u.id " +
+            "LEFT JOIN (SELECT user_id, COUNT(*) AS vote_count, MAX(voted_at) AS last_at FROM votes " +
+            "WHERE user_id BETWEEN ? AND ? GROUP BY user_id) v ON v.user_id = u.id " +
+            "WHERE u.id BETWEEN ? AND ? " +
+            "ON DUPLICATE KEY UPDATE poll_count = VALUES(poll_count), vote_count = VALUES(vote_count), " +
+            "last_activity_at = VALUES(last_activity_at)";
+
+    private static final String COUNT_SQL = "SELECT p.poll_count, v.vote_count, " +
+            "GREATEST(COALESCE(p.last_at,v.last_at), COALESCE(v.last_at,p.last_at)) FROM " +
+            "(SELECT COUNT(*) AS poll_count, MAX(created_at) AS last_at FROM polls WHERE created_by = ?) p, " +
+            "(SELECT COUNT(*) AS vote_count, MAX(voted_at) AS last_at FROM votes WHERE user_id = ?) v";
+
+    @Value("${app.userStats.maxEntries}")
+    private long maxEntries;
+
+    @Value("${app.userStats.ttlSeconds}")
+    private long ttlSeconds;
+
+    @Autowired
+    private UserStatsRepository userStatsRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private LoadingCache<Long, UserStats> cache;
+
+    @PostConstruct
+    void init(){
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build(userId -> userStatsRepository.findById(userId).orElseGet(() -> count(userId)));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup(){
+        Thread rebuilder = new Thread(() -> {
+            try {
+                rebuild();
+            } catch (RuntimeException ex){
+                logger.error("Could not rebuild user stats at startup",ex);
+            }
+        },"user-stats-rebuild");
+        rebuilder.setDaemon(true);
+        rebuilder.start();
+    }
+
+    @Transactional(readOnly = true)
+    public UserStats get(Long userId){
+        return cache.get(userId);
+    }
+
+    public void evict(Long userId){
+        cache.invalidate(userId);
+    }
+
+    @Scheduled(cron = "${app.userStats.rebuildCron}")
+    public synchronized void rebuild(){
+        long[] range = jdbcTemplate.queryForObject("SELECT COALESCE(MIN(id),1), COALESCE(MAX(id),0) FROM users",
+                (rs,rowNum) -> new long[]{rs.getLong(1),rs.getLong(2)});
+
+        for(long from=range[0];from<=range[1];from+=USER_ID_RANGE){
+            long to = from + USER_ID_RANGE - 1;
+            jdbcTemplate.update(REBUILD_SQL,from,to,from,to,from,to);
+        }
+        cache.invalidateAll();
+        logger.info("Rebuilt user stats for users {} to {}",range[0],range[1]);
+    }
+
+    // a user without a row yet, e.g. before the first rebuild has reached them
+    private UserStats count(Long userId){
+        return jdbcTemplate.queryForObject(COUNT_SQL, (rs,rowNum) -> {
+            Timestamp lastActivityAt = rs.getTimestamp(3);
+            return new UserStats(userId,rs.getLong(1),rs.getLong(2),lastActivityAt == null ? null : lastActivityAt.toInstant());
+        },userId,userId);
+    }
+}
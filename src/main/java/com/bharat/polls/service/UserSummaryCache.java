@@ -0,0 +1,78 @@
+package com.bharat.polls.service;
+
+import com.bharat.polls.payload.UserSummary;
+import com.bharat.polls.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Caches the {@link UserSummary} (id, username, name) of users, so that showing who created a poll does not load the
+ * full {@link com.bharat.polls.model.User} with its password hash and roles.
+ *
+ * Entries are evicted least recently used once the cache is full and expire after a fixed time. Misses are loaded
+ * in one projection query per batch. Updated and deleted users are evicted by {@link UserSummaryCacheListener}.
+ */
+@Service
+public class UserSummaryCache {
+
+    @Value("${app.userSummary.maxEntries}")
+    private long maxEntries;
+
+    @Value("${app.userSummary.ttlSeconds}")
+    private long ttlSeconds;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private LoadingCache<Long, UserSummary> cache;
+
+    @PostConstruct
+    void init(){
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build(new CacheLoader<Long, UserSummary>() {
+                    @Override
+                    public UserSummary load(Long userId) {
+                        return loadAll(Collections.singletonList(userId)).get(userId);
+                    }
+
+                    @Override
+                    public Map<Long, UserSummary> loadAll(Iterable<? extends Long> userIds) {
+                        List<Long> ids = new ArrayList<>();
+                        userIds.forEach(ids::add);
+                        return userRepository.findSummariesByIdIn(ids).stream()
+                                .collect(Collectors.toMap(UserSummary::getId, Function.identity()));
+                    }
+                });
+    }
+
+    public Optional<UserSummary> get(Long userId){
+        return Optional.ofNullable(cache.get(userId));
+    }
+
+    /**
+     * @return summaries by user id; ids of users that do not exist are left out
+     */
+    public Map<Long, UserSummary> getAll(List<Long> userIds){
+        return cache.getAll(userIds);
+    }
+
+    public void evict(Long userId){
+        cache.invalidate(userId);
+    }
+}
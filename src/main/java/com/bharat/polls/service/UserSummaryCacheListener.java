@@ -0,0 +1,23 @@
+package com.bharat.polls.service;
+
+import com.bharat.polls.model.User;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * JPA entity listener that keeps {@link UserSummaryCache} from serving a user's old name after a profile change.
+ * Hibernate creates it through Spring, which injects the cache.
+ */
+public class UserSummaryCacheListener {
+
+    @Autowired
+    private UserSummaryCache userSummaryCache;
+
+    @PostUpdate
+    @PostRemove
+    public void evict(User user){
+        userSummaryCache.evict(user.getId());
+    }
+}
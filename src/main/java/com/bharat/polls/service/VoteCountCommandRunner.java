@@ -0,0 +1,57 @@
+package com.bharat.polls.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+/**
+ * Maintenance commands for the denormalized vote counts. Start the application with
+ *
+ *  --vote-counts=backfill  to recompute choices.vote_count and polls.total_votes from the votes table, or
+ *  --vote-counts=check     to report every count that differs from the votes table (exit code 1 if any do).
+ *
+ * The application exits once the command has finished.
+ */
+@Component
+public class VoteCountCommandRunner implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(VoteCountCommandRunner.class);
+
+    private static final String OPTION = "vote-counts";
+
+    @Autowired
+    private VoteCountService voteCountService;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if(!args.containsOption(OPTION)){
+            return;
+        }
+
+        String command = args.getOptionValues(OPTION).isEmpty() ? "" : args.getOptionValues(OPTION).get(0);
+        int exitCode;
+        switch (command){
+            case "backfill":
+                voteCountService.backfill();
+                exitCode = 0;
+                break;
+            case "check":
+                exitCode = voteCountService.check() == 0 ? 0 : 1;
+                break;
+            default:
+                logger.error("Unknown --{} command '{}', expected backfill or check",OPTION,command);
+                exitCode = 2;
+        }
+
+        int code = exitCode;
+        System.exit(SpringApplication.exit(applicationContext, () -> code));
+    }
+}
@@ -0,0 +1,106 @@
+package com.bharat.polls.service;
+
+import com.bharat.polls.model.VoteRecord;
+import com.bharat.polls.repository.ChoiceRepository;
+import com.bharat.polls.repository.PollRepository;
+import com.bharat.polls.repository.UserStatsRepository;
+import com.bharat.polls.repository.VoteRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Owns the denormalized choices.vote_count and polls.total_votes columns.
+ *
+ * Votes are counted with atomic increments in the transaction that inserts them, together with the voter's
+ * user_stats row (see {@link UserStatsService}). Data written before the columns existed is brought in line by
+ * {@link #backfill()}, and {@link #check()} compares the columns with the votes table.
+ * Both walk the polls table in id ranges so no single statement locks a large part of it.
+ */
+@Service
+public class VoteCountService {
+
+    private static final Logger logger = LoggerFactory.getLogger(VoteCountService.class);
+
+    private static final long POLL_ID_RANGE = 1000;
+
+    @Autowired
+    private VoteRepository voteRepository;
+
+    @Autowired
+    private ChoiceRepository choiceRepository;
+
+    @Autowired
+    private PollRepository pollRepository;
+
+    @Autowired
+    private UserStatsRepository userStatsRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * @return true if the vote was stored, false if the user had already voted in the poll
+     */
+    @Transactional
+    public boolean insertAndCount(VoteRecord vote){
+        if(voteRepository.insertIgnore(vote.getPollId(),vote.getUserId(),vote.getChoiceId(),vote.getVotedAt()) == 0){
+            return false;
+        }
+        choiceRepository.incrementVoteCount(vote.getChoiceId(),1);
+        pollRepository.incrementTotalVotes(vote.getPollId(),1);
+        userStatsRepository.incrementVoteCount(vote.getUserId(),1,vote.getVotedAt());
+        return true;
+    }
+
+    public void backfill(){
+        long[] range = pollIdRange();
+        for(long from=range[0];from<=range[1];from+=POLL_ID_RANGE){
+            long to = from + POLL_ID_RANGE - 1;
+            jdbcTemplate.update("UPDATE choices c SET c.vote_count = " +
+                    "(SELECT COUNT(*) FROM votes v WHERE v.choice_id = c.id) WHERE c.poll_id BETWEEN ? AND ?",from,to);
+            jdbcTemplate.update("UPDATE polls p SET p.version = p.version + 1, p.total_votes = " +
+                    "(SELECT COALESCE(SUM(c.vote_count),0) FROM choices c WHERE c.poll_id = p.id) WHERE p.id BETWEEN ? AND ?",from,to);
+        }
+        logger.info("Backfilled vote counts for polls {} to {}",range[0],range[1]);
+    }
+
+    /**
+     * @return the number of choices and polls whose stored count differs from the votes table
+     */
+    public long check(){
+        long[] range = pollIdRange();
+        long mismatches = 0;
+
+        for(long from=range[0];from<=range[1];from+=POLL_ID_RANGE){
+            long to = from + POLL_ID_RANGE - 1;
+            mismatches += jdbcTemplate.query("SELECT c.poll_id, c.id, c.vote_count, COUNT(v.id) FROM choices c " +
+                    "LEFT JOIN votes v ON v.choice_id = c.id WHERE c.poll_id BETWEEN ? AND ? " +
+                    "GROUP BY c.poll_id, c.id, c.vote_count HAVING c.vote_count <> COUNT(v.id)",
+                    (rs,rowNum) -> {
+                        logger.warn("Poll {} choice {} stores {} votes but has {}",
+                                rs.getLong(1),rs.getLong(2),rs.getLong(3),rs.getLong(4));
+                        return 1;
+                    },from,to).size();
+            mismatches += jdbcTemplate.query("SELECT p.id, p.total_votes, COALESCE(SUM(c.vote_count),0) FROM polls p " +
+                    "LEFT JOIN choices c ON c.poll_id = p.id WHERE p.id BETWEEN ? AND ? " +
+                    "GROUP BY p.id, p.total_votes HAVING p.total_votes <> COALESCE(SUM(c.vote_count),0)",
+                    (rs,rowNum) -> {
+                        logger.warn("Poll {} stores {} total votes but its choices add up to {}",
+                                rs.getLong(1),rs.getLong(2),rs.getLong(3));
+                        return 1;
+                    },from,to).size();
+        }
+
+        logger.info("Checked vote counts for polls {} to {}: {} mismatches",range[0],range[1],mismatches);
+        return mismatches;
+    }
+
+    private long[] pollIdRange(){
+        return jdbcTemplate.queryForObject("SELECT COALESCE(MIN(id),1), COALESCE(MAX(id),0) FROM polls",
+                (rs,rowNum) -> new long[]{rs.getLong(1),rs.getLong(2)});
+    }
+}
@@ -0,0 +1,55 @@
+package com.bharat.polls.service;
+
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers, per poll, the users that are known to have voted in it, as a compressed bitmap of user ids.
+ *
+ * A hit is a definite duplicate and can be rejected without touching the database. A miss only means this node
+ * has not seen that vote, so the insert still has to run; it is an INSERT IGNORE, so a duplicate that slips through
+ * costs a no-op statement rather than a failed transaction.
+ */
+@Service
+public class VoteDuplicateFilter {
+
+    private final ConcurrentMap<Long, RoaringBitmap> votersByPoll = new ConcurrentHashMap<>();
+
+    public boolean isKnownVoter(Long pollId, Long userId){
+        RoaringBitmap voters = votersByPoll.get(pollId);
+        if(voters == null || !fitsBitmap(userId)){
+            return false;
+        }
+        synchronized (voters){
+            return voters.contains(userId.intValue());
+        }
+    }
+
+    public void recordVoter(Long pollId, Long userId){
+        if(!fitsBitmap(userId)){
+            return;
+        }
+        RoaringBitmap voters = votersByPoll.computeIfAbsent(pollId, id -> new RoaringBitmap());
+        synchronized (voters){
+            voters.add(userId.intValue());
+        }
+    }
+
+    public Set<Long> getTrackedPollIds(){
+        return Collections.unmodifiableSet(votersByPoll.keySet());
+    }
+
+    public void forgetPoll(Long pollId){
+        votersByPoll.remove(pollId);
+    }
+
+    // RoaringBitmap stores unsigned 32 bit values; larger ids are simply never filtered.
+    private static boolean fitsBitmap(Long userId){
+        return userId >= 0 && userId >>> 32 == 0;
+    }
+}
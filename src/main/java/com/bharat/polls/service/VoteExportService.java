@@ -0,0 +1,207 @@
+package com.bharat.polls.service;
+
+import com.bharat.polls.config.ReplicaRoutingDataSource;
+import com.bharat.polls.exceptions.BadRequestException;
+import com.bharat.polls.exceptions.ResourceNotFoundException;
+import com.bharat.polls.model.PollMetadata;
+import com.bharat.polls.security.UserPrincipal;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Streams the votes of a poll to its creator as CSV or newline delimited JSON.
+ *
+ * Rows come from a forward-only MySQL streaming result set (fetch size Integer.MIN_VALUE) and are written to the
+ * response as they are read, so memory use does not depend on the number of votes. Only plain JDBC is used; no
+ * entity is loaded. Votes are read in (poll_id, user_id) index order so the database does not sort them.
+ *
+ * The export reads in a read-only transaction, so it goes to a replica and a long download does not hold a primary
+ * connection. Votes cast in the last seconds may be missing from it, unless the creator wrote something recently
+ * and is pinned to the primary.
+ */
+@Service
+public class VoteExportService {
+
+    public enum Format {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public static Format of(String format){
+            for(Format value : values()){
+                if(value.extension.equalsIgnoreCase(format)){
+                    return value;
+                }
+            }
+            throw new BadRequestException("Unsupported export format '"+format+"', expected csv or ndjson");
+        }
+    }
+
+    private static final String VOTES_SQL = "SELECT v.user_id, u.username, v.choice_id, c.text, v.voted_at FROM votes v " +
+            "JOIN users u ON u.id = v.user_id JOIN choices c ON c.id = v.choice_id " +
+            "WHERE v.poll_id = ? ORDER BY v.user_id";
+
+    private static final int BUFFER_SIZE = 64*1024;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PollMetadataCache pollMetadataCache;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ReadYourWritesService readYourWritesService;
+
+    @Value("${app.export.fetchSize}")
+    private int fetchSize;
+
+    private JdbcTemplate streamingJdbcTemplate;
+
+    private TransactionTemplate replicaReads;
+
+    @PostConstruct
+    void init(){
+        streamingJdbcTemplate = new JdbcTemplate(dataSource);
+        streamingJdbcTemplate.setFetchSize(fetchSize);
+        replicaReads = new TransactionTemplate(transactionManager);
+        replicaReads.setReadOnly(true);
+    }
+
+    /**
+     * Checks that the poll exists and belongs to the current user; the returned body does the actual export once
+     * the response is being written.
+     */
+    public StreamingResponseBody export(Long pollId, UserPrincipal currentUser, Format format){
+        PollMetadata poll = pollMetadataCache.get(pollId).orElseThrow(() -> new ResourceNotFoundException("Poll","id",pollId));
+        if(!currentUser.getId().equals(poll.getCreatedBy())){
+            throw new AccessDeniedException("Only the creator of a poll can export its votes");
+        }
+//        the body is written on another thread, which does not carry this request's pin
+        boolean onPrimary = readYourWritesService.isRecentWriter(currentUser.getId());
+        return out -> {
+            if(onPrimary){
+                ReplicaRoutingDataSource.pinToPrimary();
+            }
+            try {
+                if(format == Format.CSV){
+                    writeCsv(pollId,out);
+                } else {
+                    writeNdjson(pollId,out);
+                }
+            } finally {
+                if(onPrimary){
+                    ReplicaRoutingDataSource.unpin();
+                }
+            }
+        };
+    }
+
+    private void writeCsv(Long pollId, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out,StandardCharsets.UTF_8),BUFFER_SIZE);
+        writer.write("user_id,username,choice_id,choice_text,voted_at\n");
+        query(pollId, rs -> {
+            writer.write(Long.toString(rs.getLong(1)));
+            writer.write(',');
+            writer.write(csvField(rs.getString(2)));
+            writer.write(',');
+            writer.write(Long.toString(rs.getLong(3)));
+            writer.write(',');
+            writer.write(csvField(rs.getString(4)));
+            writer.write(',');
+            writer.write(rs.getTimestamp(5).toInstant().toString());
+            writer.write('\n');
+        });
+        writer.flush();
+    }
+
+    private void writeNdjson(Long pollId, OutputStream out) throws IOException {
+        JsonGenerator gen = objectMapper.getFactory().createGenerator(new BufferedOutputStream(out,BUFFER_SIZE),JsonEncoding.UTF8);
+        gen.setRootValueSeparator(null);
+        query(pollId, rs -> {
+            gen.writeStartObject();
+            gen.writeNumberField("userId",rs.getLong(1));
+            gen.writeStringField("username",rs.getString(2));
+            gen.writeNumberField("choiceId",rs.getLong(3));
+            gen.writeStringField("choiceText",rs.getString(4));
+            gen.writeStringField("votedAt",rs.getTimestamp(5).toInstant().toString());
+            gen.writeEndObject();
+            gen.writeRaw('\n');
+        });
+        gen.flush();
+    }
+
+    private void query(Long pollId, RowWriter rowWriter) throws IOException {
+        try {
+            replicaReads.execute(status -> {
+                streamingJdbcTemplate.query(VOTES_SQL, rs -> {
+                    try {
+                        rowWriter.write(rs);
+                    } catch (IOException ex){
+                        throw new UncheckedIOException(ex);
+                    }
+                },pollId);
+                return null;
+            });
+        } catch (UncheckedIOException ex){
+//            most likely the client went away; stop reading rather than stream the rest into nothing
+            throw ex.getCause();
+        }
+    }
+
+    private static String csvField(String value){
+        if(value == null){
+            return "";
+        }
+        if(value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0){
+            return value;
+        }
+        return '"'+value.replace("\"","\"\"")+'"';
+    }
+
+    private interface RowWriter {
+        void write(ResultSet rs) throws SQLException, IOException;
+    }
+}
@@ -0,0 +1,96 @@
+package com.bharat.polls.service;
+
+import com.bharat.polls.exceptions.BadRequestException;
+import com.bharat.polls.payload.PollResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Replays the response of a vote that was cast with the same Idempotency-Key by the same user.
+ *
+ * Entries are kept for a bounded number of keys and expire after a fixed time. A retry that arrives while the
+ * original request is still running waits for its outcome instead of casting the vote a second time. Failed votes
+ * are not remembered, so a retry after a failure is a real new attempt.
+ */
+@Service
+public class VoteIdempotencyService {
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    @Value("${app.idempotency.maxEntries}")
+    private long maxEntries;
+
+    @Value("${app.idempotency.ttlSeconds}")
+    private long ttlSeconds;
+
+    private Cache<String, CastVote> responses;
+
+    @PostConstruct
+    void init(){
+        responses = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    public PollResponse castOnce(Long userId, String idempotencyKey, Long pollId, Long choiceId, Supplier<PollResponse> castVote){
+        if(idempotencyKey.isEmpty() || idempotencyKey.length() > MAX_KEY_LENGTH){
+            throw new BadRequestException("Idempotency-Key must be between 1 and "+MAX_KEY_LENGTH+" characters");
+        }
+
+        String key = userId+":"+idempotencyKey;
+        CastVote attempt = new CastVote(pollId,choiceId);
+        CastVote original = responses.asMap().putIfAbsent(key,attempt);
+
+        if(original != null){
+            if(!original.isSameVote(pollId,choiceId)){
+                throw new BadRequestException("Idempotency-Key has already been used for a different vote");
+            }
+            try {
+                return original.response.join();
+            } catch (CompletionException ex){
+                if(ex.getCause() instanceof Error){
+                    throw (Error) ex.getCause();
+                }
+                throw ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : ex;
+            }
+        }
+
+        try {
+            PollResponse response = castVote.get();
+            attempt.response.complete(response);
+            return response;
+        } catch (Throwable ex){
+//            anything the vote throws, errors included, must reach the retries waiting on this attempt
+            responses.asMap().remove(key,attempt);
+            attempt.response.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    private static class CastVote {
+
+        private final Long pollId;
+
+        private final Long choiceId;
+
+        private final CompletableFuture<PollResponse> response = new CompletableFuture<>();
+
+        CastVote(Long pollId, Long choiceId) {
+            this.pollId = pollId;
+            this.choiceId = choiceId;
+        }
+
+        boolean isSameVote(Long pollId, Long choiceId){
+            return this.pollId.equals(pollId) && this.choiceId.equals(choiceId);
+        }
+    }
+}
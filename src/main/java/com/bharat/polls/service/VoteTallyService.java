@@ -0,0 +1,348 @@
+package com.bharat.polls.service;
+
+import com.bharat.polls.config.ReplicaRoutingDataSource;
+import com.bharat.polls.model.ChoiceVoteCount;
+import com.bharat.polls.repository.ChoiceRepository;
+import com.bharat.polls.repository.PollRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * In-memory vote counts per poll and choice, so reads never have to touch the database.
+ *
+ * A poll is seeded from choices.vote_count the first time it is asked for and is then kept current by
+ * {@link #increment(Long, Long)}, which must be called once for every committed vote, inside
+ * {@link #writeVotes(Collection, Supplier)} together with the write itself. Each choice is a
+ * {@link LongAdder}, whose striped cells keep concurrent voters on a hot poll from contending on one counter.
+ * A background job re-reads the tracked polls and corrects any drift, e.g. from votes written by another node.
+ *
+ * Each poll also carries a version, seeded from polls.version and bumped after every change to its counts, so the
+ * version read before the counts never claims more than the counts show. It is what ETags are built from.
+ *
+ * Counts and versions are always read from the primary database: increments are added on top of the seeded counts,
+ * so a replica that has not caught up would leave a tally short until the next reconcile.
+ */
+@Service
+public class VoteTallyService {
+
+    private static final Logger logger = LoggerFactory.getLogger(VoteTallyService.class);
+
+    private static final int RECONCILE_CHUNK_SIZE = 500;
+
+    private static final int SEED_LOCK_STRIPES = 64;
+
+    @Autowired
+    private ChoiceRepository choiceRepository;
+
+    @Autowired
+    private PollRepository pollRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final ConcurrentMap<Long, PollTally> tallies = new ConcurrentHashMap<>();
+
+    // shared by vote writers from before their write until after their increments, exclusive while a poll is seeded
+    private final ReentrantReadWriteLock[] seedLocks = new ReentrantReadWriteLock[SEED_LOCK_STRIPES];
+
+    {
+        for(int i=0;i<SEED_LOCK_STRIPES;i++){
+            seedLocks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    private TransactionTemplate primaryReads;
+
+    @PostConstruct
+    void init(){
+        primaryReads = new TransactionTemplate(transactionManager);
+        primaryReads.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        primaryReads.setReadOnly(true);
+    }
+
+    public Map<Long,Long> getChoiceVoteCounts(Long pollId){
+        return getChoiceVoteCounts(Collections.singletonList(pollId));
+    }
+
+    /**
+     * @return vote count by choice id for all choices of the given polls that have at least one vote
+     */
+    public Map<Long,Long> getChoiceVoteCounts(List<Long> pollIds){
+        Map<Long,Long> choiceVoteCount = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+
+        for(Long pollId : pollIds){
+            PollTally tally = tallies.get(pollId);
+            if(tally == null){
+                missing.add(pollId);
+            } else {
+                tally.copyTo(choiceVoteCount);
+            }
+        }
+
+        if(!missing.isEmpty()){
+            seed(missing).forEach(tally -> tally.copyTo(choiceVoteCount));
+        }
+
+        return choiceVoteCount;
+    }
+
+    public long getVersion(Long pollId){
+        return getVersions(Collections.singletonList(pollId)).get(pollId);
+    }
+
+    /**
+     * @return the current version of each of the given polls
+     */
+    public Map<Long,Long> getVersions(List<Long> pollIds){
+        Map<Long,Long> versions = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+
+        for(Long pollId : pollIds){
+            PollTally tally = tallies.get(pollId);
+            if(tally == null){
+                missing.add(pollId);
+            } else {
+                versions.put(pollId,tally.version.get());
+            }
+        }
+
+        if(!missing.isEmpty()){
+            List<PollTally> seeded = seed(missing);
+            for(int i=0;i<missing.size();i++){
+                versions.put(missing.get(i),seeded.get(i).version.get());
+            }
+        }
+
+        return versions;
+    }
+
+    /**
+     * Runs a write that commits votes to the given polls and then calls {@link #increment(Long, Long)} for each vote
+     * it stored. None of these polls is seeded in the meantime: a seed that read the table before the commit would
+     * lose the vote, since its increment finds no tally yet, and one that read it after the commit but before the
+     * increment would count the vote twice.
+     *
+     * The write must not read any tallies itself.
+     */
+    public <T> T writeVotes(Collection<Long> pollIds, Supplier<T> write){
+        List<Lock> locks = lockStripes(pollIds,ReentrantReadWriteLock::readLock);
+        try {
+            return write.get();
+        } finally {
+            locks.forEach(Lock::unlock);
+        }
+    }
+
+    public void increment(Long pollId, Long choiceId){
+//        polls that were never seeded will read the committed vote from the table when they are
+        PollTally tally = tallies.get(pollId);
+        if(tally != null){
+            tally.add(choiceId,1);
+            tally.version.incrementAndGet();
+        }
+    }
+
+    public Set<Long> getTrackedPollIds(){
+        return Collections.unmodifiableSet(tallies.keySet());
+    }
+
+    /**
+     * Stops tracking a poll whose counts can no longer change; it is seeded again if it is ever asked for.
+     */
+    public void evict(Long pollId){
+        tallies.remove(pollId);
+    }
+
+    @Scheduled(fixedDelayString = "${app.tally.reconcileIntervalMs}")
+    public void reconcile(){
+        List<Long> pollIds = new ArrayList<>(tallies.keySet());
+        int corrected = 0;
+
+        for(int from=0;from<pollIds.size();from+=RECONCILE_CHUNK_SIZE){
+            List<Long> chunk = pollIds.subList(from,Math.min(from+RECONCILE_CHUNK_SIZE,pollIds.size()));
+
+            Map<Long,Map<Long,Long>> before = new HashMap<>();
+            chunk.forEach(pollId -> {
+                PollTally tally = tallies.get(pollId);
+                if(tally != null){
+                    before.put(pollId,tally.snapshot());
+                }
+            });
+
+            Map<Long,Map<Long,Long>> stored = groupByPoll(readFromPrimary(() -> choiceRepository.findVoteCountsByPollIdIn(chunk)));
+            Map<Long,Long> storedVersions = findVersions(chunk);
+
+            for(Map.Entry<Long,Map<Long,Long>> entry : before.entrySet()){
+                PollTally tally = tallies.get(entry.getKey());
+                Map<Long,Long> current = tally == null ? null : tally.snapshot();
+//                votes that land while the counts are being read may or may not be in them; check again next round
+                if(current == null || !current.equals(entry.getValue())){
+                    continue;
+                }
+                Map<Long,Long> expected = withoutZeros(stored.getOrDefault(entry.getKey(),Collections.emptyMap()));
+                long storedVersion = storedVersions.getOrDefault(entry.getKey(),0L);
+                if(!expected.equals(current)){
+                    tally.correct(current,expected);
+                    tally.version.accumulateAndGet(storedVersion,(version,other) -> Math.max(version+1,other));
+                    corrected++;
+                } else {
+                    tally.version.accumulateAndGet(storedVersion,Math::max);
+                }
+            }
+        }
+
+        if(corrected > 0){
+            logger.info("Corrected in-memory vote counts of {} polls",corrected);
+        }
+    }
+
+    private List<PollTally> seed(List<Long> pollIds){
+        List<Lock> locks = lockStripes(pollIds,ReentrantReadWriteLock::writeLock);
+        try {
+//            another thread may have seeded some of them while this one waited for the locks
+            Map<Long,PollTally> seeded = new HashMap<>();
+            List<Long> missing = new ArrayList<>(pollIds.size());
+            pollIds.forEach(pollId -> {
+                PollTally tally = tallies.get(pollId);
+                if(tally == null){
+                    missing.add(pollId);
+                } else {
+                    seeded.put(pollId,tally);
+                }
+            });
+            if(!missing.isEmpty()){
+//                the version is read first, so it can only be older than the counts, never newer
+                Map<Long,Long> versions = findVersions(missing);
+                Map<Long,Map<Long,Long>> stored = groupByPoll(readFromPrimary(() -> choiceRepository.findVoteCountsByPollIdIn(missing)));
+                missing.forEach(pollId -> {
+                    PollTally tally = new PollTally(stored.getOrDefault(pollId,Collections.emptyMap()),versions.getOrDefault(pollId,0L));
+                    tallies.put(pollId,tally);
+                    seeded.put(pollId,tally);
+                });
+            }
+
+            List<PollTally> ordered = new ArrayList<>(pollIds.size());
+            pollIds.forEach(pollId -> ordered.add(seeded.get(pollId)));
+            return ordered;
+        } finally {
+            locks.forEach(Lock::unlock);
+        }
+    }
+
+    // always in stripe order, so that writers and seeds holding several stripes at once cannot deadlock
+    private List<Lock> lockStripes(Collection<Long> pollIds, Function<ReentrantReadWriteLock, Lock> mode){
+        BitSet stripes = new BitSet(SEED_LOCK_STRIPES);
+        pollIds.forEach(pollId -> stripes.set(Math.floorMod(pollId.hashCode(),SEED_LOCK_STRIPES)));
+
+        List<Lock> locks = new ArrayList<>(stripes.cardinality());
+        for(int stripe=stripes.nextSetBit(0);stripe>=0;stripe=stripes.nextSetBit(stripe+1)){
+            ReentrantReadWriteLock seedLock = seedLocks[stripe];
+            Lock lock = mode.apply(seedLock);
+            if(lock == seedLock.writeLock() && seedLock.getReadHoldCount() > 0){
+                locks.forEach(Lock::unlock);
+                throw new IllegalStateException("Cannot seed a poll tally while writing votes to it");
+            }
+            lock.lock();
+            locks.add(lock);
+        }
+        return locks;
+    }
+
+    private Map<Long,Long> findVersions(List<Long> pollIds){
+        Map<Long,Long> versions = new HashMap<>();
+        readFromPrimary(() -> pollRepository.findVersionsByIdIn(pollIds)).forEach(row -> versions.put((Long) row[0],(Long) row[1]));
+        return versions;
+    }
+
+    private <T> T readFromPrimary(Supplier<T> reads){
+//        a caller's transaction on a replica cannot be joined; the extra connection then comes from the primary pool, a
+//        different pool than the one the caller holds, so concurrent seeds cannot starve each other of connections
+        if(ReplicaRoutingDataSource.isTransactionOnReplica()){
+            return ReplicaRoutingDataSource.onPrimary(() -> primaryReads.execute(status -> reads.get()));
+        }
+//        otherwise the reads join the caller's transaction, whose connection is on the primary or, pinned, will be
+        return ReplicaRoutingDataSource.onPrimary(reads);
+    }
+
+    private static Map<Long,Long> withoutZeros(Map<Long,Long> counts){
+        Map<Long,Long> nonZero = new HashMap<>(counts);
+        nonZero.values().removeIf(count -> count == 0);
+        return nonZero;
+    }
+
+    private static Map<Long,Map<Long,Long>> groupByPoll(List<ChoiceVoteCount> counts){
+        Map<Long,Map<Long,Long>> byPoll = new HashMap<>();
+        counts.forEach(count -> byPoll.computeIfAbsent(count.getPollId(), id -> new HashMap<>())
+                .put(count.getChoiceId(),count.getVoteCount()));
+        return byPoll;
+    }
+
+    private static class PollTally {
+
+        private final ConcurrentMap<Long, LongAdder> choices = new ConcurrentHashMap<>();
+
+        private final AtomicLong version;
+
+        PollTally(Map<Long,Long> counts, long version) {
+            counts.forEach(this::add);
+            this.version = new AtomicLong(version);
+        }
+
+        void add(Long choiceId, long delta){
+            choices.computeIfAbsent(choiceId, id -> new LongAdder()).add(delta);
+        }
+
+        void copyTo(Map<Long,Long> target){
+            choices.forEach((choiceId,count) -> {
+                long value = count.sum();
+                if(value != 0){
+                    target.put(choiceId,value);
+                }
+            });
+        }
+
+        Map<Long,Long> snapshot(){
+            Map<Long,Long> snapshot = new HashMap<>();
+            copyTo(snapshot);
+            return snapshot;
+        }
+
+        /**
+         * Moves each counter from the value in {@code current} to the one in {@code expected} by adding the
+         * difference, so increments racing with the correction are kept.
+         */
+        void correct(Map<Long,Long> current, Map<Long,Long> expected){
+            expected.forEach((choiceId,count) -> add(choiceId,count - current.getOrDefault(choiceId,0L)));
+            current.forEach((choiceId,count) -> {
+                if(!expected.containsKey(choiceId)){
+                    add(choiceId,-count);
+                }
+            });
+        }
+    }
+}
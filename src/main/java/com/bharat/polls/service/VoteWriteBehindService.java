@@ -0,0 +1,238 @@
+package com.bharat.polls.service;
+
+import com.bharat.polls.exceptions.AppException;
+import com.bharat.polls.exceptions.ServiceUnavailableException;
+import com.bharat.polls.exceptions.VoteNotConfirmedException;
+import com.bharat.polls.model.VoteRecord;
+import com.bharat.polls.repository.VoteJdbcRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Optional write-behind ingestion for votes (app.writeBehind.enabled).
+ *
+ * Request threads put their vote on a bounded queue and a single drainer thread writes the queue out as multi-row
+ * batches, flushing when a batch is full or when the flush interval has passed since its first vote. A caller is
+ * only answered once the batch holding its vote has been committed, so an accepted vote is a durable vote; what
+ * is saved is the per-vote transaction and connection checkout. When the queue stays full for longer than the
+ * accept timeout the vote is refused with 503 instead of piling up more work.
+ */
+@Service
+public class VoteWriteBehindService {
+
+    private static final Logger logger = LoggerFactory.getLogger(VoteWriteBehindService.class);
+
+    private static final String STOPPED_MESSAGE = "Votes are not being accepted right now. Please try again.";
+
+    @Value("${app.writeBehind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.writeBehind.queueCapacity:10000}")
+    private int queueCapacity;
+
+    @Value("${app.writeBehind.batchSize:500}")
+    private int batchSize;
+
+    @Value("${app.writeBehind.flushIntervalMs:20}")
+    private long flushIntervalMs;
+
+    @Value("${app.writeBehind.acceptTimeoutMs:1000}")
+    private long acceptTimeoutMs;
+
+    @Value("${app.writeBehind.commitTimeoutMs:5000}")
+    private long commitTimeoutMs;
+
+    @Autowired
+    private VoteJdbcRepository voteJdbcRepository;
+
+    @Autowired
+    private VoteTallyService voteTallyService;
+
+    @Autowired
+    private UserStatsService userStatsService;
+
+    private BlockingQueue<PendingVote> queue;
+
+    private Thread drainer;
+
+    private volatile boolean running;
+
+    @PostConstruct
+    void start(){
+        if(!enabled){
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        drainer = new Thread(this::drain,"vote-write-behind");
+        drainer.setDaemon(true);
+        drainer.start();
+        logger.info("Vote write-behind enabled with queue capacity {} and batch size {}",queueCapacity,batchSize);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        if(drainer == null){
+            return;
+        }
+        running = false;
+        drainer.join(commitTimeoutMs);
+    }
+
+    public boolean isEnabled(){
+        return enabled;
+    }
+
+    /**
+     * Queues the vote and waits until the batch containing it is committed.
+     *
+     * @return true if the vote was stored, false if the user had already voted in this poll
+     * @throws VoteNotConfirmedException (202) if the commit was not confirmed within the commit timeout
+     */
+    public boolean submit(VoteRecord vote){
+        PendingVote pending = new PendingVote(vote);
+        try {
+            if(!running || !queue.offer(pending,acceptTimeoutMs,TimeUnit.MILLISECONDS)){
+                throw new ServiceUnavailableException("Too many votes are being cast right now. Please try again.");
+            }
+//            the drainer may have stopped and failed the queue just before the offer went in
+            if(!running && queue.remove(pending)){
+                throw new ServiceUnavailableException(STOPPED_MESSAGE);
+            }
+            return pending.result.get(commitTimeoutMs,TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw new AppException("Interrupted while casting vote",ex);
+        } catch (TimeoutException ex){
+//            the vote is still queued and will usually commit, so this is not an error; a retry would see it as a duplicate
+            throw new VoteNotConfirmedException("Your vote has been received but is not confirmed yet. " +
+                    "Check the poll for your selected choice before voting again.",ex);
+        } catch (ExecutionException ex){
+            if(ex.getCause() instanceof ServiceUnavailableException){
+                throw (ServiceUnavailableException) ex.getCause();
+            }
+            throw new AppException("Vote could not be stored",ex.getCause());
+        }
+    }
+
+    private void drain(){
+        List<PendingVote> batch = new ArrayList<>(batchSize);
+        while(running || !queue.isEmpty()){
+            try {
+                PendingVote first = queue.poll(flushIntervalMs,TimeUnit.MILLISECONDS);
+                if(first == null){
+                    continue;
+                }
+                batch.add(first);
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while(batch.size() < batchSize){
+                    queue.drainTo(batch,batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if(batch.size() >= batchSize || remaining <= 0){
+                        break;
+                    }
+                    PendingVote next = queue.poll(remaining,TimeUnit.NANOSECONDS);
+                    if(next == null){
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException ex){
+                Thread.currentThread().interrupt();
+                running = false;
+                failAll(batch,new ServiceUnavailableException(STOPPED_MESSAGE,ex));
+            } catch (RuntimeException ex){
+//                keep the only drainer alive; votes of the batch that were not answered yet are failed
+                logger.error("Vote write-behind failed on a batch of {} votes",batch.size(),ex);
+                failAll(batch,ex);
+            } finally {
+                batch.clear();
+            }
+        }
+
+//        interrupted with votes still queued; nothing will write them any more
+        List<PendingVote> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if(!remaining.isEmpty()){
+            logger.warn("Vote write-behind stopped with {} votes still queued",remaining.size());
+            failAll(remaining,new ServiceUnavailableException(STOPPED_MESSAGE));
+        }
+    }
+
+    // a no-op for votes that have already been answered
+    private static void failAll(List<PendingVote> votes, Throwable cause){
+        votes.forEach(pending -> pending.result.completeExceptionally(cause));
+    }
+
+    private void flush(List<PendingVote> batch){
+        List<VoteRecord> votes = new ArrayList<>(batch.size());
+        Set<Long> pollIds = new HashSet<>();
+        batch.forEach(pending -> {
+            votes.add(pending.vote);
+            pollIds.add(pending.vote.getPollId());
+        });
+
+        boolean[] inserted;
+        try {
+            inserted = voteTallyService.writeVotes(pollIds,() -> {
+                boolean[] stored = voteJdbcRepository.insertAll(votes);
+                countStored(batch,stored);
+                return stored;
+            });
+        } catch (RuntimeException ex){
+            logger.error("Failed to write a batch of {} votes",batch.size(),ex);
+            failAll(batch,ex);
+            return;
+        }
+
+        for(int i=0;i<batch.size();i++){
+            batch.get(i).result.complete(inserted[i]);
+        }
+    }
+
+    private void countStored(List<PendingVote> batch, boolean[] inserted){
+        for(int i=0;i<batch.size();i++){
+            PendingVote pending = batch.get(i);
+            try {
+                if(inserted[i]){
+                    voteTallyService.increment(pending.vote.getPollId(),pending.vote.getChoiceId());
+                    userStatsService.evict(pending.vote.getUserId());
+                }
+            } catch (RuntimeException ex){
+//                the vote is committed either way; the tally reconcile job repairs the count
+                logger.error("Failed to count the committed vote of user {} in poll {}",
+                        pending.vote.getUserId(),pending.vote.getPollId(),ex);
+            }
+        }
+    }
+
+    private static class PendingVote {
+
+        private final VoteRecord vote;
+
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        PendingVote(VoteRecord vote) {
+            this.vote = vote;
+        }
+    }
+}
@@ -4,6 +4,11 @@ public interface AppConstants {
 
     String DEFAULT_PAGE_NUMBER = "0";
     String DEFAULT_PAGE_SIZE = "30";
+    String DEFAULT_TRENDING_SIZE = "10";
 
     int MAX_PAGE_SIZE = 50;
+
+    int MAX_BULK_POLLS = 1000;
+
+    int MAX_POLLS_BY_ID = 100;
 }
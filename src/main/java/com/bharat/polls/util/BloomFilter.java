@@ -0,0 +1,66 @@
+package com.bharat.polls.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter of strings: {@link #mightContain(String)} never answers false for a string that was put in, and
+ * answers true for one that was not with roughly the false positive rate it was sized for (more once it holds more
+ * than the expected number of strings). Strings cannot be removed.
+ *
+ * Safe for concurrent use; bits are set with atomic updates.
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bits;
+    private final int hashes;
+
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        long n = Math.max(1,expectedInsertions);
+        long m = (long) Math.ceil(-n*Math.log(falsePositiveRate)/(Math.log(2)*Math.log(2)));
+        this.words = new AtomicLongArray((int) ((m+63)/64));
+        this.bits = words.length()*64L;
+        this.hashes = Math.max(1,(int) Math.round((double) bits/n*Math.log(2)));
+    }
+
+    public void put(String value){
+        long h1 = hash(value);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L);
+        for(int i=0;i<hashes;i++){
+            long bit = Math.floorMod(h1+i*h2,bits);
+            long mask = 1L << bit;
+            words.getAndAccumulate((int) (bit >>> 6),mask,(word,m) -> word | m);
+        }
+    }
+
+    public boolean mightContain(String value){
+        long h1 = hash(value);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L);
+        for(int i=0;i<hashes;i++){
+            long bit = Math.floorMod(h1+i*h2,bits);
+            if((words.get((int) (bit >>> 6)) & (1L << bit)) == 0){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 64-bit FNV-1a over the chars, finished with the MurmurHash3 mixer to spread it over all bits
+    private static long hash(String value){
+        long h = 0xcbf29ce484222325L;
+        for(int i=0;i<value.length();i++){
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h){
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93e7f4ca87bL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
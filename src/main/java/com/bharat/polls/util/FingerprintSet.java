@@ -0,0 +1,119 @@
+package com.bharat.polls.util;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A set of strings kept as 64-bit fingerprints in an open-addressing table, about 16 bytes per string.
+ *
+ * {@link #contains(String)} is exact for strings that were added: it never answers false for one of them. A string
+ * that was not added can still collide with the fingerprint of one that was, with a probability of about
+ * size / 2^64, so a true answer is confirmed elsewhere when that matters. Strings cannot be removed.
+ *
+ * Safe for concurrent use; lookups share a lock that adds take exclusively.
+ */
+public class FingerprintSet {
+
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    // 0 marks a free slot, so a fingerprint that comes out as 0 is stored as this instead
+    private static final long ZERO_FINGERPRINT = 1;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private long[] table;
+    private int size;
+
+    public FingerprintSet(long expectedSize) {
+        this.table = new long[capacityFor(expectedSize)];
+    }
+
+    public void add(String value){
+        long fingerprint = fingerprint(value);
+        lock.writeLock().lock();
+        try {
+            if(size >= table.length-1){
+                throw new IllegalStateException("FingerprintSet is full at "+size+" strings");
+            }
+            if(insert(table,fingerprint)){
+                size++;
+                if(size*2L > table.length && table.length < MAX_CAPACITY){
+                    grow();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean contains(String value){
+        long fingerprint = fingerprint(value);
+        lock.readLock().lock();
+        try {
+            int mask = table.length-1;
+            for(int slot=(int) fingerprint & mask;;slot=(slot+1) & mask){
+                if(table[slot] == fingerprint){
+                    return true;
+                }
+                if(table[slot] == 0){
+                    return false;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void grow(){
+        long[] grown = new long[table.length*2];
+        for(long fingerprint : table){
+            if(fingerprint != 0){
+                insert(grown,fingerprint);
+            }
+        }
+        table = grown;
+    }
+
+    // linear probing; false if the fingerprint is already there
+    private static boolean insert(long[] table, long fingerprint){
+        int mask = table.length-1;
+        for(int slot=(int) fingerprint & mask;;slot=(slot+1) & mask){
+            if(table[slot] == fingerprint){
+                return false;
+            }
+            if(table[slot] == 0){
+                table[slot] = fingerprint;
+                return true;
+            }
+        }
+    }
+
+    private static int capacityFor(long expectedSize){
+        long wanted = Math.max(16,expectedSize*2);
+        return wanted >= MAX_CAPACITY ? MAX_CAPACITY : Integer.highestOneBit((int) wanted-1) << 1;
+    }
+
+    // a multiply-xor hash over the chars, seeded differently from BloomFilter's so the two fail independently,
+    // finished with the MurmurHash3 mixer
+    private static long fingerprint(String value){
+        long h = 0x2545F4914F6CDD1DL;
+        for(int i=0;i<value.length();i++){
+            h = (h ^ value.charAt(i))*0x9E3779B97F4A7C15L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93e7f4ca87bL;
+        h ^= h >>> 33;
+        return h == 0 ? ZERO_FINGERPRINT : h;
+    }
+}
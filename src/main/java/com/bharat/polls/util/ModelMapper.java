@@ -1,7 +1,6 @@
 package com.bharat.polls.util;
 
 import com.bharat.polls.model.Poll;
-import com.bharat.polls.model.User;
 import com.bharat.polls.payload.ChoiceResponse;
 import com.bharat.polls.payload.PollResponse;
 import com.bharat.polls.payload.UserSummary;
@@ -13,7 +12,7 @@ import java.util.stream.Collectors;
 
 public class ModelMapper {
 
-    public static PollResponse mapPollToPollResponse(Poll poll, Map<Long,Long> choiceVoteMap, User creator, Long userVote){
+    public static PollResponse mapPollToPollResponse(Poll poll, Map<Long,Long> choiceVoteMap, UserSummary creator, Long userVote){
 
         PollResponse pollResponse = new PollResponse();
         pollResponse.setId(poll.getId());
@@ -37,8 +36,7 @@ public class ModelMapper {
         }).collect(Collectors.toList());
 
         pollResponse.setChoices(choiceResponses);
-        UserSummary creatorSummary = new UserSummary(creator.getId(),creator.getUsername(),creator.getName());
-        pollResponse.setCreatedBy(creatorSummary);
+        pollResponse.setCreatedBy(creator);
 
         if(userVote != null){
             pollResponse.setSelectedChoice(userVote);
@@ -49,4 +47,19 @@ public class ModelMapper {
 
         return pollResponse;
     }
+
+    // Shallow: the copy shares the choices and creator of the original.
+    public static PollResponse copyPollResponse(PollResponse poll){
+        PollResponse copy = new PollResponse();
+        copy.setId(poll.getId());
+        copy.setQuestion(poll.getQuestion());
+        copy.setChoices(poll.getChoices());
+        copy.setCreatedBy(poll.getCreatedBy());
+        copy.setCreationDateTime(poll.getCreationDateTime());
+        copy.setExpirationDateTime(poll.getExpirationDateTime());
+        copy.setExpired(poll.getExpired());
+        copy.setSelectedChoice(poll.getSelectedChoice());
+        copy.setTotalVotes(poll.getTotalVotes());
+        return copy;
+    }
 }
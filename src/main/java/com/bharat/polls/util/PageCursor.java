@@ -0,0 +1,51 @@
+package com.bharat.polls.util;
+
+import com.bharat.polls.exceptions.BadRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Position in a keyset-paginated listing: the sort timestamp and id of the last item of a page. Clients only ever
+ * see it as an opaque string and hand it back to get the next page.
+ */
+public class PageCursor {
+
+    private final Instant timestamp;
+    private final Long id;
+
+    public PageCursor(Instant timestamp, Long id) {
+        this.timestamp = timestamp;
+        this.id = id;
+    }
+
+    /**
+     * @return the decoded cursor, or null for an empty cursor, which asks for the first page
+     */
+    public static PageCursor decode(String cursor){
+        if(cursor == null || cursor.isEmpty()){
+            return null;
+        }
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+            Instant timestamp = parts[0].isEmpty() ? null : Instant.ofEpochSecond(Long.parseLong(parts[0]),Long.parseLong(parts[1]));
+            return new PageCursor(timestamp,Long.parseLong(parts[2]));
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException ex){
+            throw new BadRequestException("Invalid page cursor");
+        }
+    }
+
+    public String encode(){
+        String value = timestamp == null ? "::"+id : timestamp.getEpochSecond()+":"+timestamp.getNano()+":"+id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    public Long getId() {
+        return id;
+    }
+}
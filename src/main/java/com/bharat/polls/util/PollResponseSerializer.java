@@ -0,0 +1,210 @@
+package com.bharat.polls.util;
+
+import com.bharat.polls.payload.ChoiceResponse;
+import com.bharat.polls.payload.PollResponse;
+import com.bharat.polls.payload.UserSummary;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.io.CharacterEscapes;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.jackson.JsonComponent;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Writes {@link PollResponse} from cached, pre-encoded JSON fragments.
+ *
+ * Everything about a poll except its vote counts, expired flag and the viewer's selectedChoice is fixed once the poll
+ * exists, so those parts are serialized once per poll, kept as UTF-8 {@link SerializedString}s and copied into the
+ * output as raw bytes; only the changing fields are encoded per response. The output is byte for byte what the
+ * default bean serializer writes, in the same property order: fragments are encoded by the factory of the mapper that
+ * is writing, with its generator's features and escapes, and are only reused for a generator set up the same way.
+ * Pretty printing is not supported.
+ *
+ * A cached entry is checked against the response before use (question, times, creator and choices), so a renamed
+ * creator or any other difference simply rebuilds it.
+ */
+@JsonComponent
+public class PollResponseSerializer extends JsonSerializer<PollResponse> {
+
+    // for generators without a codec, which a mapper always sets
+    private static final JsonFactory FALLBACK_FACTORY = new JsonFactory();
+
+    private static final SerializedString SELECTED_CHOICE = new SerializedString(",\"selectedChoice\":");
+    private static final SerializedString TOTAL_VOTES = new SerializedString(",\"totalVotes\":");
+    private static final SerializedString EXPIRED = new SerializedString(",\"expired\":");
+
+    private final Cache<Long, PollFragments> fragments;
+
+    public PollResponseSerializer(@Value("${app.pollJson.maxEntries}") long maxEntries) {
+        this.fragments = Caffeine.newBuilder().maximumSize(maxEntries).build();
+    }
+
+    @Override
+    public Class<PollResponse> handledType() {
+        return PollResponse.class;
+    }
+
+    @Override
+    public void serialize(PollResponse poll, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        PollFragments cached = poll.getId() == null ? null : fragments.getIfPresent(poll.getId());
+        if(cached == null || !cached.matches(poll) || !cached.writtenLike(gen)){
+            cached = new PollFragments(poll,provider,gen);
+            if(poll.getId() != null){
+                fragments.put(poll.getId(),cached);
+            }
+        }
+
+//        the object context only frames the value; its fields, commas included, go out as raw text
+        gen.writeStartObject(poll);
+        gen.writeRaw(cached.head);
+
+        List<ChoiceResponse> choices = poll.getChoices();
+        if(choices == null){
+            gen.writeRaw("null");
+        } else {
+            gen.writeRaw('[');
+            for(int i=0;i<choices.size();i++){
+                if(i > 0){
+                    gen.writeRaw(',');
+                }
+                gen.writeRaw(cached.choices[i]);
+                gen.writeRaw(String.valueOf(choices.get(i).getVoteCount()));
+                gen.writeRaw('}');
+            }
+            gen.writeRaw(']');
+        }
+
+        gen.writeRaw(cached.tail);
+        if(poll.getSelectedChoice() != null){
+            gen.writeRaw(SELECTED_CHOICE);
+            gen.writeRaw(String.valueOf(poll.getSelectedChoice()));
+        }
+        gen.writeRaw(TOTAL_VOTES);
+        gen.writeRaw(String.valueOf(poll.getTotalVotes()));
+        gen.writeRaw(EXPIRED);
+        gen.writeRaw(String.valueOf(poll.getExpired()));
+        gen.writeEndObject();
+    }
+
+    /**
+     * The fixed parts of one poll's JSON: everything before the choices array, the opening of each choice up to its
+     * vote count, and everything between the choices and the first changing field.
+     */
+    private static class PollFragments {
+
+        private final String question;
+        private final Instant creationDateTime;
+        private final Instant expirationDateTime;
+        private final UserSummary createdBy;
+        private final Long[] choiceIds;
+        private final String[] choiceTexts;
+
+        private final JsonFactory factory;
+        private final int featureMask;
+        private final CharacterEscapes characterEscapes;
+        private final int highestNonEscapedChar;
+
+        private final SerializedString head;
+        private final SerializedString[] choices;
+        private final SerializedString tail;
+
+        PollFragments(PollResponse poll, SerializerProvider provider, JsonGenerator target) throws IOException {
+            ObjectCodec codec = target.getCodec();
+            this.factory = codec == null ? FALLBACK_FACTORY : codec.getFactory();
+            this.featureMask = target.getFeatureMask();
+            this.characterEscapes = target.getCharacterEscapes();
+            this.highestNonEscapedChar = target.getHighestEscapedChar();
+
+            this.question = poll.getQuestion();
+            this.creationDateTime = poll.getCreationDateTime();
+            this.expirationDateTime = poll.getExpirationDateTime();
+            this.createdBy = poll.getCreatedBy() == null ? null
+                    : new UserSummary(poll.getCreatedBy().getId(),poll.getCreatedBy().getUsername(),poll.getCreatedBy().getName());
+
+            this.head = new SerializedString("\"id\":"+toJson(poll.getId(),provider)
+                    +",\"question\":"+toJson(question,provider)+",\"choices\":");
+
+            int size = poll.getChoices() == null ? 0 : poll.getChoices().size();
+            this.choiceIds = new Long[size];
+            this.choiceTexts = new String[size];
+            this.choices = new SerializedString[size];
+            for(int i=0;i<size;i++){
+                ChoiceResponse choice = poll.getChoices().get(i);
+                choiceIds[i] = choice.getId();
+                choiceTexts[i] = choice.getText();
+                choices[i] = new SerializedString("{\"id\":"+toJson(choice.getId(),provider)
+                        +",\"text\":"+toJson(choice.getText(),provider)+",\"voteCount\":");
+            }
+
+            this.tail = new SerializedString(",\"createdBy\":"+toJson(createdBy,provider)
+                    +",\"creationDateTime\":"+toJson(creationDateTime,provider)
+                    +",\"expirationDateTime\":"+toJson(expirationDateTime,provider));
+        }
+
+        boolean matches(PollResponse poll){
+            if(!Objects.equals(question,poll.getQuestion())
+                    || !Objects.equals(creationDateTime,poll.getCreationDateTime())
+                    || !Objects.equals(expirationDateTime,poll.getExpirationDateTime())
+                    || !sameUser(createdBy,poll.getCreatedBy())){
+                return false;
+            }
+
+            List<ChoiceResponse> pollChoices = poll.getChoices();
+            if(pollChoices == null){
+                return choiceIds.length == 0;
+            }
+            if(pollChoices.size() != choiceIds.length){
+                return false;
+            }
+            for(int i=0;i<choiceIds.length;i++){
+                ChoiceResponse choice = pollChoices.get(i);
+                if(!Objects.equals(choiceIds[i],choice.getId()) || !Objects.equals(choiceTexts[i],choice.getText())){
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean sameUser(UserSummary cached, UserSummary user){
+            if(cached == null || user == null){
+                return cached == user;
+            }
+            return Objects.equals(cached.getId(),user.getId())
+                    && Objects.equals(cached.getUsername(),user.getUsername())
+                    && Objects.equals(cached.getName(),user.getName());
+        }
+
+        boolean writtenLike(JsonGenerator gen){
+            ObjectCodec codec = gen.getCodec();
+            return factory == (codec == null ? FALLBACK_FACTORY : codec.getFactory())
+                    && featureMask == gen.getFeatureMask()
+                    && characterEscapes == gen.getCharacterEscapes()
+                    && highestNonEscapedChar == gen.getHighestEscapedChar();
+        }
+
+        // Encodes a value the way the rest of the response is encoded (date format, escaping).
+        private String toJson(Object value, SerializerProvider provider) throws IOException {
+            StringWriter out = new StringWriter();
+            try (JsonGenerator gen = factory.createGenerator(out)) {
+                gen.overrideStdFeatures(featureMask,-1);
+                if(characterEscapes != null){
+                    gen.setCharacterEscapes(characterEscapes);
+                }
+                gen.setHighestNonEscapedChar(highestNonEscapedChar);
+                provider.defaultSerializeValue(value,gen);
+            }
+            return out.toString();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.bharat.polls.util;
+
+import java.util.Arrays;
+
+/**
+ * An ascending list of ids, each with a few flag bits, compressed as variable-length deltas.
+ *
+ * Every entry is one varint of (id - previous id) << FLAG_BITS | flags. Entries are grouped in blocks of
+ * BLOCK_SIZE, and the first id and byte offset of each block are kept uncompressed: the first entry of a block is
+ * encoded relative to the block's own first id, so a {@link Cursor} can jump straight to the block that may hold an
+ * id instead of decoding everything before it.
+ *
+ * Ids are expected in ascending order. An id at or below the last one is merged in by re-encoding from its block
+ * onwards, and a repeated id gets its flags or-ed together.
+ *
+ * Not thread-safe.
+ */
+public class PostingList {
+
+    public static final int FLAG_BITS = 2;
+
+    private static final int FLAG_MASK = (1 << FLAG_BITS) - 1;
+
+    private static final int BLOCK_SIZE = 128;
+
+    private byte[] data = new byte[8];
+    private int length;
+
+    private long[] blockFirstIds = new long[1];
+    private int[] blockOffsets = new int[1];
+    private int blocks;
+
+    private int size;
+    private long lastId;
+
+    public int size() {
+        return size;
+    }
+
+    public void add(long id, int flags){
+        if(size > 0 && id <= lastId){
+            merge(id,flags);
+        } else {
+            append(id,flags);
+        }
+    }
+
+    /**
+     * Adds all entries of a list whose ids come after the ids of this one.
+     */
+    public void addAll(PostingList other){
+        Cursor cursor = other.cursor();
+        while(cursor.next()){
+            add(cursor.getId(),cursor.getFlags());
+        }
+    }
+
+    /**
+     * Drops the spare capacity; call once a list is done growing for a while.
+     */
+    public void trim(){
+        data = Arrays.copyOf(data,length);
+        blockFirstIds = Arrays.copyOf(blockFirstIds,Math.max(1,blocks));
+        blockOffsets = Arrays.copyOf(blockOffsets,Math.max(1,blocks));
+    }
+
+    public Cursor cursor(){
+        return new Cursor();
+    }
+
+    private void append(long id, int flags){
+        long previous = lastId;
+        if(size % BLOCK_SIZE == 0){
+            if(blocks == blockFirstIds.length){
+                blockFirstIds = Arrays.copyOf(blockFirstIds,blocks*2);
+                blockOffsets = Arrays.copyOf(blockOffsets,blocks*2);
+            }
+            blockFirstIds[blocks] = id;
+            blockOffsets[blocks] = length;
+            blocks++;
+            previous = id;
+        }
+        writeVarint(((id-previous) << FLAG_BITS) | (flags & FLAG_MASK));
+        lastId = id;
+        size++;
+    }
+
+    private void merge(long id, int flags){
+        int block = findBlock(id);
+        int from = block*BLOCK_SIZE;
+
+        long[] ids = new long[size-from+1];
+        int[] entryFlags = new int[ids.length];
+        Cursor cursor = new Cursor();
+        cursor.enterBlock(block);
+        int count = 0;
+        boolean placed = false;
+        while(cursor.next()){
+            if(!placed && id <= cursor.getId()){
+                placed = true;
+                if(id == cursor.getId()){
+                    flags |= cursor.getFlags();
+                    ids[count] = id;
+                    entryFlags[count++] = flags;
+                    continue;
+                }
+                ids[count] = id;
+                entryFlags[count++] = flags;
+            }
+            ids[count] = cursor.getId();
+            entryFlags[count++] = cursor.getFlags();
+        }
+
+//        drop the re-encoded blocks and append them again
+        length = blockOffsets[block];
+        blocks = block;
+        size = from;
+        for(int i=0;i<count;i++){
+            append(ids[i],entryFlags[i]);
+        }
+    }
+
+    // the last block whose first id is at most the given id, or the first block
+    private int findBlock(long id){
+        int low = 0;
+        int high = blocks-1;
+        while(low < high){
+            int mid = (low+high+1) >>> 1;
+            if(blockFirstIds[mid] <= id){
+                low = mid;
+            } else {
+                high = mid-1;
+            }
+        }
+        return low;
+    }
+
+    private void writeVarint(long value){
+        if(length+10 > data.length){
+            data = Arrays.copyOf(data,Math.max(data.length*2,length+10));
+        }
+        while((value & ~0x7FL) != 0){
+            data[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[length++] = (byte) value;
+    }
+
+    /**
+     * Reads the entries in order. Call {@link #next()} or {@link #advance(long)} before reading the first entry.
+     */
+    public class Cursor {
+
+        private int block = -1;
+        private int position;
+        private int blockEnd;
+        private long id;
+        private int flags;
+        private boolean positioned;
+
+        public long getId() {
+            return id;
+        }
+
+        public int getFlags() {
+            return flags;
+        }
+
+        public boolean next(){
+            if(position >= blockEnd){
+                if(block+1 >= blocks){
+                    positioned = false;
+                    return false;
+                }
+                enterBlock(block+1);
+            }
+
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while(b < 0);
+
+            id += value >>> FLAG_BITS;
+            flags = (int) (value & FLAG_MASK);
+            positioned = true;
+            return true;
+        }
+
+        /**
+         * Moves to the first entry with an id of at least target, skipping whole blocks where it can.
+         *
+         * @return false once the list has no such entry
+         */
+        public boolean advance(long target){
+            if(positioned && id >= target){
+                return true;
+            }
+            if(blocks == 0){
+                return false;
+            }
+            int targetBlock = findBlock(target);
+            if(targetBlock > block){
+                enterBlock(targetBlock);
+            }
+            while(next()){
+                if(id >= target){
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void enterBlock(int block){
+            this.block = block;
+            this.position = blockOffsets[block];
+            this.blockEnd = block+1 < blocks ? blockOffsets[block+1] : length;
+            this.id = blockFirstIds[block];
+            this.positioned = false;
+        }
+    }
+}
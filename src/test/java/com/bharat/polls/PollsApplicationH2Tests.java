@@ -0,0 +1,50 @@
+package com.bharat.polls;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Boots the whole application against H2 in MySQL mode, so mapping errors that stop the entityManagerFactory (such as
+ * index columns Hibernate cannot resolve) fail the build without a MySQL server.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+public class PollsApplicationH2Tests {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void contextLoadsWithThePollIndexes() {
+        List<String> indexes = jdbcTemplate.queryForList(
+                "SELECT LOWER(INDEX_NAME) FROM INFORMATION_SCHEMA.INDEXES WHERE LOWER(TABLE_NAME) = 'polls'",String.class);
+
+        assertTrue(indexes.toString(),indexes.contains("idx_polls_created_at_id"));
+        assertTrue(indexes.toString(),indexes.contains("idx_polls_created_by_created_at_id"));
+        assertTrue(indexes.toString(),indexes.contains("idx_polls_expiration_date_time"));
+    }
+
+    @Test
+    public void pollListingWithBothCursorAndIdsIsNotAmbiguous() throws Exception {
+        mockMvc.perform(get("/api/polls").param("cursor","").param("ids","1"))
+                .andExpect(status().isOk());
+    }
+}
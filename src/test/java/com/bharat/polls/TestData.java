@@ -0,0 +1,108 @@
+package com.bharat.polls;
+
+import com.bharat.polls.payload.ChoiceRequest;
+import com.bharat.polls.payload.PollLength;
+import com.bharat.polls.payload.PollRequest;
+import com.bharat.polls.security.UserPrincipal;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Rows for tests against the H2 database, written with plain SQL. Each test keeps to its own id range and removes
+ * it again with {@link #deleteRange(JdbcTemplate, long, long)}, since the database is shared by all tests that
+ * boot the "h2" profile.
+ */
+public final class TestData {
+
+    private TestData() {
+    }
+
+    public static void insertUsers(JdbcTemplate jdbcTemplate, long fromId, int count){
+        Timestamp now = Timestamp.from(Instant.now());
+        List<Object[]> args = new ArrayList<>(count);
+        for(long id=fromId;id<fromId+count;id++){
+            args.add(new Object[]{id,"User "+id,"user"+id,"user"+id+"@example.com","x",now,now});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO users (id, name, username, email, password, created_at, updated_at) " +
+                "VALUES (?,?,?,?,?,?,?)",args);
+    }
+
+    /**
+     * Inserts a poll created by createdBy at createdAt, open for a day, with the given choices and no votes.
+     */
+    public static void insertPoll(JdbcTemplate jdbcTemplate, long pollId, long createdBy, Instant createdAt, long... choiceIds){
+        Timestamp created = Timestamp.from(createdAt);
+        jdbcTemplate.update("INSERT INTO polls (id, question, expiration_date_time, created_at, updated_at, created_by, updated_by) " +
+                "VALUES (?,?,?,?,?,?,?)",pollId,"Question "+pollId,Timestamp.from(createdAt.plusSeconds(86400)),created,created,
+                createdBy,createdBy);
+        for(long choiceId : choiceIds){
+            jdbcTemplate.update("INSERT INTO choices (id, text, poll_id) VALUES (?,?,?)",choiceId,"Choice "+choiceId,pollId);
+        }
+    }
+
+    /**
+     * Deletes the polls and users with ids in [fromId, toId], along with their choices, votes and stats.
+     */
+    public static void deleteRange(JdbcTemplate jdbcTemplate, long fromId, long toId){
+        jdbcTemplate.update("DELETE FROM votes WHERE poll_id BETWEEN ? AND ? OR user_id BETWEEN ? AND ?",fromId,toId,fromId,toId);
+        jdbcTemplate.update("DELETE FROM user_stats WHERE user_id BETWEEN ? AND ?",fromId,toId);
+        jdbcTemplate.update("DELETE FROM choices WHERE poll_id BETWEEN ? AND ?",fromId,toId);
+        jdbcTemplate.update("DELETE FROM polls WHERE id BETWEEN ? AND ?",fromId,toId);
+        jdbcTemplate.update("DELETE FROM users WHERE id BETWEEN ? AND ?",fromId,toId);
+    }
+
+    /**
+     * Deletes the polls the user created through the services, whose ids came from the generators.
+     */
+    public static void deletePollsCreatedBy(JdbcTemplate jdbcTemplate, long userId){
+        jdbcTemplate.update("DELETE FROM choices WHERE poll_id IN (SELECT id FROM polls WHERE created_by = ?)",userId);
+        jdbcTemplate.update("DELETE FROM polls WHERE created_by = ?",userId);
+        jdbcTemplate.update("DELETE FROM user_stats WHERE user_id = ?",userId);
+    }
+
+    /**
+     * @return count valid requests for one-day polls with two choices each
+     */
+    public static List<PollRequest> pollRequests(int count){
+        List<PollRequest> requests = new ArrayList<>(count);
+        for(int i=0;i<count;i++){
+            PollRequest request = new PollRequest();
+            request.setQuestion("Question "+i);
+            request.setChoices(Arrays.asList(choice("Yes"),choice("No")));
+            PollLength pollLength = new PollLength();
+            pollLength.setDays(1);
+            pollLength.setHours(0);
+            request.setPollLength(pollLength);
+            requests.add(request);
+        }
+        return requests;
+    }
+
+    /**
+     * Authenticates the current thread as the user, which is who the auditing records as creator.
+     */
+    public static void signIn(long userId){
+        UserPrincipal principal = new UserPrincipal(userId,"User "+userId,"user"+userId,"user"+userId+"@example.com","x",
+                Collections.emptyList());
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(principal,null,principal.getAuthorities()));
+    }
+
+    public static void signOut(){
+        SecurityContextHolder.clearContext();
+    }
+
+    private static ChoiceRequest choice(String text){
+        ChoiceRequest choice = new ChoiceRequest();
+        choice.setText(text);
+        return choice;
+    }
+}
@@ -0,0 +1,136 @@
+package com.bharat.polls.config;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReplicaRoutingDataSourceTest {
+
+    private EmbeddedDatabase primary;
+    private EmbeddedDatabase replica;
+    private boolean replicaDown;
+
+    private ReplicaRoutingDataSource routingDataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate readWrite;
+    private TransactionTemplate readOnly;
+
+    @Before
+    public void setUp() {
+        primary = database("primary");
+        replica = database("replica");
+
+        DataSource replicaPool = new DelegatingDataSource(replica) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                if(replicaDown){
+                    throw new SQLException("Connection refused");
+                }
+                return super.getConnection();
+            }
+        };
+        routingDataSource = new ReplicaRoutingDataSource(primary,Collections.singletonMap("replica-0",replicaPool));
+        routingDataSource.afterPropertiesSet();
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readWrite = new TransactionTemplate(transactionManager);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+    }
+
+    @After
+    public void tearDown() {
+        ReplicaRoutingDataSource.unpin();
+        primary.shutdown();
+        replica.shutdown();
+    }
+
+    @Test
+    public void readOnlyTransactionsReadFromTheReplica() {
+        assertEquals("replica",readOnly.execute(status -> whereAmI()));
+    }
+
+    @Test
+    public void writableTransactionsAndPlainStatementsGoToThePrimary() {
+        assertEquals("primary",readWrite.execute(status -> whereAmI()));
+        assertEquals("primary",whereAmI());
+    }
+
+    @Test
+    public void pinnedThreadReadsFromThePrimary() {
+        ReplicaRoutingDataSource.pinToPrimary();
+        assertEquals("primary",readOnly.execute(status -> whereAmI()));
+
+        ReplicaRoutingDataSource.unpin();
+        assertEquals("replica",readOnly.execute(status -> whereAmI()));
+
+        assertEquals("primary",ReplicaRoutingDataSource.onPrimary(() -> readOnly.execute(status -> whereAmI())));
+    }
+
+    @Test
+    public void transactionOnReplicaIsKnownUntilItCompletes() {
+        assertTrue(readOnly.execute(status -> {
+            whereAmI();
+            return ReplicaRoutingDataSource.isTransactionOnReplica();
+        }));
+        assertFalse(ReplicaRoutingDataSource.isTransactionOnReplica());
+
+        assertFalse(readWrite.execute(status -> {
+            whereAmI();
+            return ReplicaRoutingDataSource.isTransactionOnReplica();
+        }));
+        assertFalse(ReplicaRoutingDataSource.onPrimary(() -> readOnly.execute(status -> {
+            whereAmI();
+            return ReplicaRoutingDataSource.isTransactionOnReplica();
+        })));
+    }
+
+    @Test
+    public void unhealthyReplicaIsTakenOutOfRotation() {
+        routingDataSource.checkReplicas(0);
+        assertEquals(Collections.singletonList("replica-0"),routingDataSource.getHealthyReplicas());
+
+        replicaDown = true;
+        routingDataSource.checkReplicas(0);
+        assertTrue(routingDataSource.getHealthyReplicas().isEmpty());
+        assertEquals("primary",readOnly.execute(status -> whereAmI()));
+
+        replicaDown = false;
+        routingDataSource.checkReplicas(0);
+        assertEquals("replica",readOnly.execute(status -> whereAmI()));
+    }
+
+    private String whereAmI() {
+        return jdbcTemplate.queryForObject("SELECT name FROM marker",String.class);
+    }
+
+    private static EmbeddedDatabase database(String name) {
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName(name+"-"+UUID.randomUUID())
+                .build();
+        new JdbcTemplate(database).execute("CREATE TABLE marker (name VARCHAR(16))");
+        new JdbcTemplate(database).update("INSERT INTO marker VALUES (?)",name);
+        return database;
+    }
+}
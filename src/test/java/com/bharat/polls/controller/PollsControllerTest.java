@@ -0,0 +1,100 @@
+package com.bharat.polls.controller;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The poll feed against H2, with the ETag read ahead of the page. Page sizes differ from the snapshot's so that the
+ * pages are built from the database.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+public class PollsControllerTest {
+
+    // in the future, so that these polls head the feed whatever other tests have stored
+    private static final Instant CREATED_AT = Instant.parse("2100-01-01T00:00:00Z");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+        Timestamp now = Timestamp.from(CREATED_AT);
+        jdbcTemplate.update("INSERT INTO users (id, name, username, email, password, created_at, updated_at) VALUES (?,?,?,?,?,?,?)",
+                9001L,"Feed Tester","feedtester","feedtester@example.com","x",now,now);
+        for(long pollId=9001;pollId<=9003;pollId++){
+            Timestamp createdAt = Timestamp.from(CREATED_AT.plusSeconds(pollId));
+            jdbcTemplate.update("INSERT INTO polls (id, question, expiration_date_time, created_at, updated_at, created_by, updated_by) " +
+                    "VALUES (?,?,?,?,?,?,?)",pollId,"Question "+pollId,Timestamp.from(CREATED_AT.plusSeconds(86400)),createdAt,createdAt,9001L,9001L);
+            jdbcTemplate.update("INSERT INTO choices (id, text, poll_id, vote_count) VALUES (?,?,?,?)",pollId*10,"Yes",pollId,2L);
+            jdbcTemplate.update("INSERT INTO choices (id, text, poll_id, vote_count) VALUES (?,?,?,?)",pollId*10+1,"No",pollId,1L);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        jdbcTemplate.update("DELETE FROM choices WHERE poll_id BETWEEN 9001 AND 9003");
+        jdbcTemplate.update("DELETE FROM polls WHERE id BETWEEN 9001 AND 9003");
+        jdbcTemplate.update("DELETE FROM users WHERE id = 9001");
+    }
+
+    @Test
+    public void pageMatchesItsETag() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/polls").param("page","0").param("size","2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content",hasSize(2)))
+                .andExpect(jsonPath("$.content[0].id").value(9003))
+                .andExpect(jsonPath("$.content[0].choices",hasSize(2)))
+                .andExpect(jsonPath("$.content[0].totalVotes").value(3))
+                .andExpect(jsonPath("$.content[1].id").value(9002))
+                .andReturn();
+        String eTag = result.getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/api/polls").param("page","0").param("size","2").header(HttpHeaders.IF_NONE_MATCH,eTag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    public void cursorPagesFollowEachOther() throws Exception {
+        MvcResult first = mockMvc.perform(get("/api/polls").param("cursor","").param("size","2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content",hasSize(2)))
+                .andExpect(jsonPath("$.content[0].id").value(9003))
+                .andExpect(jsonPath("$.content[1].id").value(9002))
+                .andReturn();
+        String eTag = first.getResponse().getHeader(HttpHeaders.ETAG);
+        String nextCursor = JsonPath.read(first.getResponse().getContentAsString(),"$.nextCursor");
+
+        mockMvc.perform(get("/api/polls").param("cursor","").param("size","2").header(HttpHeaders.IF_NONE_MATCH,eTag))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/api/polls").param("cursor",nextCursor).param("size","1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content",hasSize(1)))
+                .andExpect(jsonPath("$.content[0].id").value(9001));
+    }
+}
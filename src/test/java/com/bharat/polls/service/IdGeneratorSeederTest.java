@@ -0,0 +1,86 @@
+package com.bharat.polls.service;
+
+import com.bharat.polls.TestData;
+import com.bharat.polls.payload.BulkPollResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.Instant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The seeder against H2: rows written past the generators, e.g. by an old IDENTITY column or an import, must not
+ * collide with the ids Hibernate hands out next.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("h2")
+public class IdGeneratorSeederTest {
+
+    private static final long USER_ID = 30001;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private IdGeneratorSeeder idGeneratorSeeder;
+
+    @Autowired
+    private PollService pollService;
+
+    private long existingPollId;
+
+    @Before
+    public void setUp() {
+        TestData.insertUsers(jdbcTemplate,USER_ID,1);
+        TestData.signIn(USER_ID);
+    }
+
+    @After
+    public void tearDown() {
+        TestData.signOut();
+        TestData.deletePollsCreatedBy(jdbcTemplate,USER_ID);
+        TestData.deleteRange(jdbcTemplate,existingPollId,existingPollId);
+        TestData.deleteRange(jdbcTemplate,USER_ID,USER_ID);
+    }
+
+    @Test
+    public void movesTheGeneratorsPastExistingIds() {
+        long nextPollId = nextVal("polls");
+        long nextChoiceId = nextVal("choices");
+//        inside the next blocks Hibernate would take
+        existingPollId = nextPollId+50;
+        TestData.insertPoll(jdbcTemplate,existingPollId,USER_ID,Instant.now(),nextChoiceId+50,nextChoiceId+51);
+
+        idGeneratorSeeder.seed();
+
+        assertTrue(nextVal("polls") > existingPollId);
+        assertTrue(nextVal("choices") > nextChoiceId+51);
+//        enough polls and choices to go through the blocks that held the existing ids
+        BulkPollResponse response = pollService.createPolls(TestData.pollRequests(150));
+        assertEquals(150,response.getCreated());
+    }
+
+    @Test
+    public void neverLowersTheGenerators() {
+        long raised = nextVal("polls")+1000;
+        jdbcTemplate.update("UPDATE id_generators SET next_val = ? WHERE name = 'polls'",raised);
+
+        idGeneratorSeeder.seed();
+
+        assertEquals(raised,nextVal("polls"));
+    }
+
+    private long nextVal(String segment){
+        return jdbcTemplate.queryForObject("SELECT next_val FROM id_generators WHERE name = ?",Long.class,segment);
+    }
+}
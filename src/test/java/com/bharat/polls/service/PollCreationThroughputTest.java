@@ -0,0 +1,92 @@
+package com.bharat.polls.service;
+
+import com.bharat.polls.TestData;
+import com.bharat.polls.util.AppConstants;
+import com.bharat.polls.payload.PollRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Creates the same number of polls one transaction per poll and in bulk requests, and logs the rate of each. Ids
+ * come from the id_generators table in blocks, so only bulk inserts can be batched by Hibernate. Every run checks
+ * that the polls and their choices were stored. Raise -Dbenchmark.polls for steadier numbers.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("h2")
+public class PollCreationThroughputTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(PollCreationThroughputTest.class);
+
+    private static final long USER_ID = 30002;
+    private static final int POLLS = Integer.getInteger("benchmark.polls",2000);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PollService pollService;
+
+    @Before
+    public void setUp() {
+        TestData.insertUsers(jdbcTemplate,USER_ID,1);
+        TestData.signIn(USER_ID);
+    }
+
+    @After
+    public void tearDown() {
+        TestData.signOut();
+        TestData.deletePollsCreatedBy(jdbcTemplate,USER_ID);
+        TestData.deleteRange(jdbcTemplate,USER_ID,USER_ID);
+    }
+
+    @Test
+    public void oneTransactionPerPoll() {
+        List<PollRequest> requests = TestData.pollRequests(POLLS);
+        long start = System.nanoTime();
+        for(PollRequest request : requests){
+            pollService.createPoll(request);
+        }
+        report("one transaction per poll",start);
+
+        assertStored();
+    }
+
+    @Test
+    public void bulkRequests() {
+        List<PollRequest> requests = TestData.pollRequests(POLLS);
+        long start = System.nanoTime();
+        for(int from=0;from<requests.size();from+=AppConstants.MAX_BULK_POLLS){
+            int to = Math.min(from+AppConstants.MAX_BULK_POLLS,requests.size());
+            assertEquals(to-from,pollService.createPolls(requests.subList(from,to)).getCreated());
+        }
+        report("bulk requests of "+AppConstants.MAX_BULK_POLLS,start);
+
+        assertStored();
+    }
+
+    private void assertStored(){
+        assertEquals(POLLS,(int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM polls WHERE created_by = ?",
+                Integer.class,USER_ID));
+        assertEquals(2*POLLS,(int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM choices WHERE poll_id IN " +
+                "(SELECT id FROM polls WHERE created_by = ?)",Integer.class,USER_ID));
+    }
+
+    private static void report(String how, long startNanos){
+        long ms = Math.max(1,(System.nanoTime()-startNanos)/1000000);
+        logger.info("{} polls, {}: {} ms, {} polls/s",POLLS,how,ms,POLLS*1000L/ms);
+    }
+}
@@ -0,0 +1,182 @@
+package com.bharat.polls.service;
+
+import com.bharat.polls.model.PollMetadata;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * The frames a WebSocket subscriber gets: the full results first, then one delta per tick in which a count changed.
+ */
+public class PollResultsBroadcasterTest {
+
+    private static final Long POLL_ID = 1L;
+    private static final long YES = 10L;
+    private static final long NO = 11L;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // what the tally reports; the tests move it between ticks
+    private final Map<Long,Long> counts = new HashMap<>();
+    private volatile long version = 5;
+
+    private final BlockingQueue<String> frames = new LinkedBlockingQueue<>();
+
+    private PollResultsBroadcaster broadcaster;
+    private WebSocketSession session;
+
+    @Before
+    public void setUp() throws Exception {
+        counts.put(YES,3L);
+        counts.put(NO,1L);
+
+        VoteTallyService voteTallyService = mock(VoteTallyService.class);
+        when(voteTallyService.getVersions(anyList())).thenAnswer(invocation -> Collections.singletonMap(POLL_ID,version));
+        when(voteTallyService.getChoiceVoteCounts(anyList())).thenAnswer(invocation -> new HashMap<>(counts));
+        FinalResultsService finalResultsService = mock(FinalResultsService.class);
+        when(finalResultsService.getVersions(anyList())).thenAnswer(invocation -> Collections.singletonMap(POLL_ID,version));
+        when(finalResultsService.getChoiceVoteCounts(anyList())).thenAnswer(invocation -> new HashMap<>(counts));
+
+        broadcaster = new PollResultsBroadcaster();
+        ReflectionTestUtils.setField(broadcaster,"objectMapper",objectMapper);
+        ReflectionTestUtils.setField(broadcaster,"voteTallyService",voteTallyService);
+        ReflectionTestUtils.setField(broadcaster,"finalResultsService",finalResultsService);
+        ReflectionTestUtils.setField(broadcaster,"senderThreads",1);
+        ReflectionTestUtils.setField(broadcaster,"socketBufferSize",16);
+        ReflectionTestUtils.setField(broadcaster,"maxPollsPerSocket",10);
+        broadcaster.start();
+
+        session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn("session-1");
+        doAnswer(invocation -> frames.add(((TextMessage) invocation.getArgument(0)).getPayload()))
+                .when(session).sendMessage(any());
+        broadcaster.register(session);
+    }
+
+    @After
+    public void tearDown() {
+        broadcaster.stop();
+    }
+
+    @Test
+    public void firstMessageIsTheFullResults() throws Exception {
+        subscribe(Instant.now().plusSeconds(3600));
+
+        JsonNode results = nextFrame();
+        assertEquals("results",results.get("type").asText());
+        assertEquals(5,results.get("version").asLong());
+        assertEquals(3,results.get("choiceVoteCounts").get(String.valueOf(YES)).asLong());
+        assertEquals(1,results.get("choiceVoteCounts").get(String.valueOf(NO)).asLong());
+        assertEquals(4,results.get("totalVotes").asLong());
+        assertFalse(results.get("expired").asBoolean());
+    }
+
+    @Test
+    public void changedCountsAreSentAsDeltas() throws Exception {
+        subscribe(Instant.now().plusSeconds(3600));
+        nextFrame();
+
+        counts.put(YES,5L);
+        version = 7;
+        broadcaster.broadcast();
+
+        JsonNode delta = nextFrame();
+        assertEquals("delta",delta.get("type").asText());
+        assertEquals(7,delta.get("version").asLong());
+        assertEquals(2,delta.get("choiceVoteDeltas").get(String.valueOf(YES)).asLong());
+//        only the choices whose count moved
+        assertNull(delta.get("choiceVoteDeltas").get(String.valueOf(NO)));
+        assertFalse(delta.get("expired").asBoolean());
+    }
+
+    @Test
+    public void ticksWithoutChangedCountsSendNothing() throws Exception {
+        subscribe(Instant.now().plusSeconds(3600));
+        nextFrame();
+
+//        same version, then a new version whose counts did not move (e.g. a reconcile that found nothing)
+        broadcaster.broadcast();
+        version = 6;
+        broadcaster.broadcast();
+
+        counts.put(NO,2L);
+        version = 7;
+        broadcaster.broadcast();
+
+//        the first frame after the snapshot is the one for the real change
+        JsonNode delta = nextFrame();
+        assertEquals(7,delta.get("version").asLong());
+        assertEquals(1,delta.get("choiceVoteDeltas").get(String.valueOf(NO)).asLong());
+        assertNull(frames.poll(200,TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void expiredPollGetsAFinalMessageAndNothingAfter() throws Exception {
+        subscribe(Instant.now().plusMillis(300));
+        nextFrame();
+
+        Thread.sleep(400);
+        broadcaster.broadcast();
+
+        JsonNode last = nextFrame();
+        assertEquals("delta",last.get("type").asText());
+        assertTrue(last.get("expired").asBoolean());
+        assertEquals(0,last.get("choiceVoteDeltas").size());
+
+        counts.put(YES,9L);
+        version = 9;
+        broadcaster.broadcast();
+        assertNull(frames.poll(200,TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void subscribingToAnExpiredPollSendsItsFinalResults() throws Exception {
+        subscribe(Instant.now().minusSeconds(60));
+
+        JsonNode results = nextFrame();
+        assertEquals("results",results.get("type").asText());
+        assertTrue(results.get("expired").asBoolean());
+        assertEquals(4,results.get("totalVotes").asLong());
+
+        broadcaster.broadcast();
+        assertNull(frames.poll(200,TimeUnit.MILLISECONDS));
+    }
+
+    private void subscribe(Instant expiresAt){
+        PollMetadata poll = new PollMetadata(POLL_ID,expiresAt,new long[]{YES,NO},2L);
+        PollMetadataCache pollMetadataCache = mock(PollMetadataCache.class);
+        when(pollMetadataCache.getAll(anyList())).thenReturn(Collections.singletonMap(POLL_ID,poll));
+        ReflectionTestUtils.setField(broadcaster,"pollMetadataCache",pollMetadataCache);
+        broadcaster.subscribe(session,Collections.singletonList(POLL_ID));
+    }
+
+    private JsonNode nextFrame() throws Exception {
+        String frame = frames.poll(10,TimeUnit.SECONDS);
+        assertNotNull("No frame sent",frame);
+        return objectMapper.readTree(frame);
+    }
+}
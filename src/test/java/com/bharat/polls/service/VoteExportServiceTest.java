@@ -0,0 +1,125 @@
+package com.bharat.polls.service;
+
+import com.bharat.polls.TestData;
+import com.bharat.polls.exceptions.BadRequestException;
+import com.bharat.polls.security.UserPrincipal;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The bytes of a vote export against H2: a CSV header and one escaped line per vote, or one JSON object per line,
+ * both in user id order.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("h2")
+public class VoteExportServiceTest {
+
+    private static final long CREATOR_ID = 40001;
+    private static final long POLL_ID = 40001;
+    private static final long YES = 400010;
+    private static final long NO = 400011;
+    private static final Instant VOTED_AT = Instant.parse("2019-06-01T10:15:30Z");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private VoteExportService voteExportService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Before
+    public void setUp() {
+        TestData.insertUsers(jdbcTemplate,CREATOR_ID,3);
+        TestData.insertPoll(jdbcTemplate,POLL_ID,CREATOR_ID,Instant.now(),YES,NO);
+        jdbcTemplate.update("UPDATE choices SET text = ? WHERE id = ?","Yes, \"definitely\"",YES);
+        jdbcTemplate.update("UPDATE choices SET text = ? WHERE id = ?","No",NO);
+//        inserted out of order; the export sorts by user id
+        vote(CREATOR_ID+2,NO,VOTED_AT.plusSeconds(1));
+        vote(CREATOR_ID+1,YES,VOTED_AT);
+    }
+
+    @After
+    public void tearDown() {
+        TestData.deleteRange(jdbcTemplate,CREATOR_ID,CREATOR_ID+2);
+    }
+
+    @Test
+    public void csvHasAHeaderAndEscapesFields() throws Exception {
+        String csv = export(CREATOR_ID,VoteExportService.Format.CSV);
+
+        assertEquals("user_id,username,choice_id,choice_text,voted_at\n" +
+                "40002,user40002,400010,\"Yes, \"\"definitely\"\"\",2019-06-01T10:15:30Z\n" +
+                "40003,user40003,400011,No,2019-06-01T10:15:31Z\n",csv);
+    }
+
+    @Test
+    public void ndjsonHasOneObjectPerLine() throws Exception {
+        String ndjson = export(CREATOR_ID,VoteExportService.Format.NDJSON);
+
+        String[] lines = ndjson.split("\n",-1);
+        assertEquals(3,lines.length);
+        assertEquals("",lines[2]);
+        JsonNode first = objectMapper.readTree(lines[0]);
+        assertEquals(40002,first.get("userId").asLong());
+        assertEquals("user40002",first.get("username").asText());
+        assertEquals(YES,first.get("choiceId").asLong());
+        assertEquals("Yes, \"definitely\"",first.get("choiceText").asText());
+        assertEquals("2019-06-01T10:15:30Z",first.get("votedAt").asText());
+        assertEquals(40003,objectMapper.readTree(lines[1]).get("userId").asLong());
+    }
+
+    @Test
+    public void pollWithoutVotesExportsOnlyTheHeader() throws Exception {
+        jdbcTemplate.update("DELETE FROM votes WHERE poll_id = ?",POLL_ID);
+
+        assertEquals("user_id,username,choice_id,choice_text,voted_at\n",export(CREATOR_ID,VoteExportService.Format.CSV));
+        assertEquals("",export(CREATOR_ID,VoteExportService.Format.NDJSON));
+    }
+
+    @Test(expected = AccessDeniedException.class)
+    public void onlyTheCreatorMayExport() {
+        voteExportService.export(POLL_ID,user(CREATOR_ID+1),VoteExportService.Format.CSV);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void unknownFormatIsABadRequest() {
+        VoteExportService.Format.of("xml");
+    }
+
+    private String export(long userId, VoteExportService.Format format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        voteExportService.export(POLL_ID,user(userId),format).writeTo(out);
+        return new String(out.toByteArray(),StandardCharsets.UTF_8);
+    }
+
+    private void vote(long userId, long choiceId, Instant votedAt){
+        jdbcTemplate.update("INSERT INTO votes (poll_id, user_id, choice_id, voted_at) VALUES (?,?,?,?)",
+                POLL_ID,userId,choiceId,Timestamp.from(votedAt));
+    }
+
+    private static UserPrincipal user(long userId){
+        return new UserPrincipal(userId,"User "+userId,"user"+userId,"user"+userId+"@example.com","x",
+                Collections.emptyList());
+    }
+}
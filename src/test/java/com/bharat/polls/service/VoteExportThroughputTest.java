@@ -0,0 +1,106 @@
+package com.bharat.polls.service;
+
+import com.bharat.polls.TestData;
+import com.bharat.polls.security.UserPrincipal;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.OutputStream;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Exports the votes of one poll as CSV and as newline delimited JSON into a stream that only counts, and logs the
+ * rate of each. Every run checks that one line per vote was written. Raise -Dbenchmark.exportVotes for steadier
+ * numbers.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("h2")
+public class VoteExportThroughputTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(VoteExportThroughputTest.class);
+
+    private static final long FIRST_ID = 50001;
+    private static final int VOTES = Integer.getInteger("benchmark.exportVotes",20000);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private VoteExportService voteExportService;
+
+    @Before
+    public void setUp() {
+        TestData.insertUsers(jdbcTemplate,FIRST_ID,VOTES);
+        TestData.insertPoll(jdbcTemplate,FIRST_ID,FIRST_ID,Instant.now(),FIRST_ID*10,FIRST_ID*10+1);
+        Timestamp now = Timestamp.from(Instant.now());
+        List<Object[]> args = new ArrayList<>(VOTES);
+        for(int i=0;i<VOTES;i++){
+            args.add(new Object[]{FIRST_ID,FIRST_ID+i,FIRST_ID*10+i%2,now});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO votes (poll_id, user_id, choice_id, voted_at) VALUES (?,?,?,?)",args);
+    }
+
+    @After
+    public void tearDown() {
+        TestData.deleteRange(jdbcTemplate,FIRST_ID,FIRST_ID+VOTES);
+    }
+
+    @Test
+    public void csv() throws Exception {
+        export(VoteExportService.Format.CSV,VOTES+1);
+    }
+
+    @Test
+    public void ndjson() throws Exception {
+        export(VoteExportService.Format.NDJSON,VOTES);
+    }
+
+    private void export(VoteExportService.Format format, int expectedLines) throws Exception {
+        UserPrincipal creator = new UserPrincipal(FIRST_ID,"User "+FIRST_ID,"user"+FIRST_ID,"user"+FIRST_ID+"@example.com",
+                "x",Collections.emptyList());
+        CountingOutputStream out = new CountingOutputStream();
+        long start = System.nanoTime();
+        voteExportService.export(FIRST_ID,creator,format).writeTo(out);
+        long ms = Math.max(1,(System.nanoTime()-start)/1000000);
+        logger.info("{} votes, {}: {} ms, {} votes/s, {} KB",VOTES,format,ms,VOTES*1000L/ms,out.bytes/1024);
+
+        assertEquals(expectedLines,out.lines);
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+
+        private long bytes;
+        private int lines;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+            if(b == '\n'){
+                lines++;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for(int i=off;i<off+len;i++){
+                write(b[i]);
+            }
+        }
+    }
+}
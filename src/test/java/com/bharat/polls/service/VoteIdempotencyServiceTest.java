@@ -0,0 +1,178 @@
+package com.bharat.polls.service;
+
+import com.bharat.polls.exceptions.BadRequestException;
+import com.bharat.polls.payload.PollResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * A key whose vote is still running, has completed, has failed or has expired.
+ */
+public class VoteIdempotencyServiceTest {
+
+    private static final Long USER_ID = 7L;
+    private static final Long POLL_ID = 1L;
+    private static final Long CHOICE_ID = 10L;
+
+    private final AtomicInteger casts = new AtomicInteger();
+
+    private final ExecutorService voters = Executors.newCachedThreadPool();
+
+    private VoteIdempotencyService service;
+
+    @Before
+    public void setUp() {
+        service = new VoteIdempotencyService();
+        ReflectionTestUtils.setField(service,"maxEntries",100L);
+        ReflectionTestUtils.setField(service,"ttlSeconds",60L);
+        service.init();
+    }
+
+    @After
+    public void tearDown() {
+        voters.shutdownNow();
+    }
+
+    @Test
+    public void completedVoteIsReplayed() {
+        PollResponse response = service.castOnce(USER_ID,"key",POLL_ID,CHOICE_ID,cast(response(1L)));
+
+        assertSame(response,service.castOnce(USER_ID,"key",POLL_ID,CHOICE_ID,cast(response(2L))));
+        assertEquals(1,casts.get());
+//        keys belong to a user
+        assertEquals(2L,(long) service.castOnce(USER_ID+1,"key",POLL_ID,CHOICE_ID,cast(response(2L))).getId());
+    }
+
+    @Test
+    public void retryWhileInFlightWaitsForTheOriginal() throws Exception {
+        CountDownLatch casting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        PollResponse response = response(1L);
+        Future<PollResponse> original = voters.submit(() -> service.castOnce(USER_ID,"key",POLL_ID,CHOICE_ID,() -> {
+            casting.countDown();
+            await(release);
+            return cast(response).get();
+        }));
+        assertTrue(casting.await(10,TimeUnit.SECONDS));
+
+        Future<PollResponse> retry = voters.submit(() -> service.castOnce(USER_ID,"key",POLL_ID,CHOICE_ID,cast(response(2L))));
+        try {
+            retry.get(200,TimeUnit.MILLISECONDS);
+            fail("Expected the retry to wait for the original vote");
+        } catch (TimeoutException ex){
+//            expected
+        }
+
+        release.countDown();
+        assertSame(response,original.get(10,TimeUnit.SECONDS));
+        assertSame(response,retry.get(10,TimeUnit.SECONDS));
+        assertEquals(1,casts.get());
+    }
+
+    @Test
+    public void errorInTheVoteReachesTheWaitingRetryAndFreesTheKey() throws Exception {
+        CountDownLatch casting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<PollResponse> original = voters.submit(() -> service.castOnce(USER_ID,"key",POLL_ID,CHOICE_ID,() -> {
+            casting.countDown();
+            await(release);
+            throw new StackOverflowError();
+        }));
+        assertTrue(casting.await(10,TimeUnit.SECONDS));
+        Future<PollResponse> retry = voters.submit(() -> service.castOnce(USER_ID,"key",POLL_ID,CHOICE_ID,cast(response(2L))));
+        Thread.sleep(100);
+
+        release.countDown();
+        assertFailedWith(StackOverflowError.class,original);
+        assertFailedWith(StackOverflowError.class,retry);
+
+//        failures are not remembered
+        assertEquals(3L,(long) service.castOnce(USER_ID,"key",POLL_ID,CHOICE_ID,cast(response(3L))).getId());
+    }
+
+    @Test
+    public void failedVoteIsNotReplayed() {
+        try {
+            service.castOnce(USER_ID,"key",POLL_ID,CHOICE_ID,() -> {
+                throw new IllegalStateException("Deadlock found when trying to get lock");
+            });
+            fail("Expected the vote to fail");
+        } catch (IllegalStateException ex){
+//            expected
+        }
+
+        assertEquals(2L,(long) service.castOnce(USER_ID,"key",POLL_ID,CHOICE_ID,cast(response(2L))).getId());
+    }
+
+    @Test
+    public void expiredKeyCastsAgain() throws Exception {
+        ReflectionTestUtils.setField(service,"ttlSeconds",1L);
+        service.init();
+        service.castOnce(USER_ID,"key",POLL_ID,CHOICE_ID,cast(response(1L)));
+
+        Thread.sleep(1100);
+
+        assertEquals(2L,(long) service.castOnce(USER_ID,"key",POLL_ID,CHOICE_ID,cast(response(2L))).getId());
+        assertEquals(2,casts.get());
+    }
+
+    @Test
+    public void keyReusedForAnotherVoteIsRejected() {
+        service.castOnce(USER_ID,"key",POLL_ID,CHOICE_ID,cast(response(1L)));
+
+        try {
+            service.castOnce(USER_ID,"key",POLL_ID,CHOICE_ID+1,cast(response(2L)));
+            fail("Expected the key to be rejected");
+        } catch (BadRequestException ex){
+//            expected: 400
+        }
+        assertEquals(1,casts.get());
+    }
+
+    private Supplier<PollResponse> cast(PollResponse response){
+        return () -> {
+            casts.incrementAndGet();
+            return response;
+        };
+    }
+
+    private static PollResponse response(Long id){
+        PollResponse response = new PollResponse();
+        response.setId(id);
+        return response;
+    }
+
+    private static void await(CountDownLatch latch){
+        try {
+            assertTrue(latch.await(10,TimeUnit.SECONDS));
+        } catch (InterruptedException ex){
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static void assertFailedWith(Class<? extends Throwable> type, Future<?> future) throws Exception {
+        try {
+            future.get(10,TimeUnit.SECONDS);
+            fail("Expected "+type.getSimpleName());
+        } catch (ExecutionException ex){
+            assertTrue(ex.getCause().toString(),type.isInstance(ex.getCause()));
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.bharat.polls.service;
+
+import com.bharat.polls.model.ChoiceVoteCount;
+import com.bharat.polls.repository.ChoiceRepository;
+import com.bharat.polls.repository.PollRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Races a vote write against the first read of its poll. The stored count stands in for choices.vote_count.
+ */
+public class VoteTallyServiceTest {
+
+    private static final Long POLL_ID = 1L;
+    private static final Long CHOICE_ID = 10L;
+
+    private final AtomicLong stored = new AtomicLong();
+
+    // counted down by the seed once it has read the stored count, which then waits for seedMayFinish
+    private final CountDownLatch seedHasRead = new CountDownLatch(1);
+    private volatile CountDownLatch seedMayFinish = new CountDownLatch(0);
+
+    private VoteTallyService voteTallyService;
+
+    @Before
+    public void setUp() {
+        ChoiceRepository choiceRepository = mock(ChoiceRepository.class);
+        when(choiceRepository.findVoteCountsByPollIdIn(anyList())).thenAnswer(invocation -> {
+            ChoiceVoteCount count = new ChoiceVoteCount(POLL_ID,CHOICE_ID,stored.get());
+            seedHasRead.countDown();
+            assertTrue(seedMayFinish.await(10,TimeUnit.SECONDS));
+            return Collections.singletonList(count);
+        });
+        PollRepository pollRepository = mock(PollRepository.class);
+        when(pollRepository.findVersionsByIdIn(anyList()))
+                .thenAnswer(invocation -> Collections.singletonList(new Object[]{POLL_ID,stored.get()}));
+
+        voteTallyService = new VoteTallyService();
+        ReflectionTestUtils.setField(voteTallyService,"choiceRepository",choiceRepository);
+        ReflectionTestUtils.setField(voteTallyService,"pollRepository",pollRepository);
+    }
+
+    @Test
+    public void voteCommittedBeforeTheSeedIsNotCountedTwice() throws Exception {
+        CountDownLatch committed = new CountDownLatch(1);
+        CountDownLatch mayIncrement = new CountDownLatch(1);
+        Thread writer = start(() -> voteTallyService.writeVotes(Collections.singletonList(POLL_ID),() -> {
+            stored.incrementAndGet();
+            committed.countDown();
+            await(mayIncrement);
+            voteTallyService.increment(POLL_ID,CHOICE_ID);
+            return null;
+        }));
+        assertTrue(committed.await(10,TimeUnit.SECONDS));
+
+//        the seed has to wait for the increment; without the lock it would read the committed vote first
+        Thread reader = start(() -> voteTallyService.getChoiceVoteCounts(POLL_ID));
+        awaitBlockedOrDone(reader);
+        mayIncrement.countDown();
+        writer.join(10000);
+        reader.join(10000);
+
+        assertEquals(Collections.singletonMap(CHOICE_ID,1L),voteTallyService.getChoiceVoteCounts(POLL_ID));
+        assertEquals(1L,voteTallyService.getVersion(POLL_ID));
+    }
+
+    @Test
+    public void voteCommittedWhileSeedingIsNotLost() throws Exception {
+        seedMayFinish = new CountDownLatch(1);
+        Thread reader = start(() -> voteTallyService.getChoiceVoteCounts(POLL_ID));
+        assertTrue(seedHasRead.await(10,TimeUnit.SECONDS));
+
+//        the write has to wait for the seed; without the lock its increment would find no tally and be dropped
+        Thread writer = start(() -> voteTallyService.writeVotes(Collections.singletonList(POLL_ID),() -> {
+            stored.incrementAndGet();
+            voteTallyService.increment(POLL_ID,CHOICE_ID);
+            return null;
+        }));
+        awaitBlockedOrDone(writer);
+        seedMayFinish.countDown();
+        reader.join(10000);
+        writer.join(10000);
+
+        assertEquals(Collections.singletonMap(CHOICE_ID,1L),voteTallyService.getChoiceVoteCounts(POLL_ID));
+        assertEquals(1L,voteTallyService.getVersion(POLL_ID));
+    }
+
+    @Test
+    public void concurrentVotesAndSeedsAddUp() throws Exception {
+        int writers = 8;
+        int votesPerWriter = 500;
+        Thread[] threads = new Thread[writers+1];
+        for(int w=0;w<writers;w++){
+            threads[w] = start(() -> {
+                for(int v=0;v<votesPerWriter;v++){
+                    voteTallyService.writeVotes(Collections.singletonList(POLL_ID),() -> {
+                        stored.incrementAndGet();
+                        voteTallyService.increment(POLL_ID,CHOICE_ID);
+                        return null;
+                    });
+                }
+            });
+        }
+//        keeps dropping the tally so that it is seeded again and again while the votes come in
+        threads[writers] = start(() -> {
+            for(int i=0;i<200;i++){
+                voteTallyService.evict(POLL_ID);
+                voteTallyService.getChoiceVoteCounts(POLL_ID);
+            }
+        });
+        for(Thread thread : threads){
+            thread.join(30000);
+        }
+
+        Map<Long,Long> counts = voteTallyService.getChoiceVoteCounts(POLL_ID);
+        assertEquals(Collections.singletonMap(CHOICE_ID,(long) writers*votesPerWriter),counts);
+    }
+
+    private static Thread start(Runnable task){
+        Thread thread = new Thread(task);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitBlockedOrDone(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime()+TimeUnit.SECONDS.toNanos(10);
+        while(thread.getState() != Thread.State.WAITING && thread.getState() != Thread.State.TERMINATED){
+            assertTrue("Thread neither blocked nor finished",System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch){
+        try {
+            assertTrue(latch.await(10,TimeUnit.SECONDS));
+        } catch (InterruptedException ex){
+            throw new IllegalStateException(ex);
+        }
+    }
+}
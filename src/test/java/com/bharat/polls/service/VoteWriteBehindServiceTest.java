@@ -0,0 +1,217 @@
+package com.bharat.polls.service;
+
+import com.bharat.polls.exceptions.AppException;
+import com.bharat.polls.exceptions.ServiceUnavailableException;
+import com.bharat.polls.exceptions.VoteNotConfirmedException;
+import com.bharat.polls.model.VoteRecord;
+import com.bharat.polls.repository.VoteJdbcRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * The write-behind queue with the database mocked away. Each test holds the drainer inside a write until it lets go,
+ * to get the queue into the state it is about.
+ */
+public class VoteWriteBehindServiceTest {
+
+    private final List<VoteRecord> written = new CopyOnWriteArrayList<>();
+
+    // counted down when the drainer starts writing a batch, which then waits for release
+    private final CountDownLatch writing = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private volatile boolean duplicates;
+    private volatile RuntimeException failure;
+
+    private VoteJdbcRepository voteJdbcRepository;
+    private VoteTallyService voteTallyService;
+    private UserStatsService userStatsService;
+
+    private VoteWriteBehindService service;
+
+    private final ExecutorService voters = Executors.newCachedThreadPool();
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        voteJdbcRepository = mock(VoteJdbcRepository.class);
+        when(voteJdbcRepository.insertAll(anyList())).thenAnswer(invocation -> {
+            List<VoteRecord> votes = invocation.getArgument(0);
+            writing.countDown();
+            assertTrue(release.await(10,TimeUnit.SECONDS));
+            RuntimeException toThrow = failure;
+            if(toThrow != null){
+                failure = null;
+                throw toThrow;
+            }
+            written.addAll(votes);
+            boolean[] inserted = new boolean[votes.size()];
+            for(int i=0;i<inserted.length;i++){
+                inserted[i] = !duplicates;
+            }
+            return inserted;
+        });
+        voteTallyService = mock(VoteTallyService.class);
+        when(voteTallyService.writeVotes(any(Collection.class),any(Supplier.class)))
+                .thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+        userStatsService = mock(UserStatsService.class);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        if(service != null){
+            service.stop();
+        }
+        voters.shutdownNow();
+    }
+
+    @Test
+    public void fullQueueRefusesTheVote() throws Exception {
+        start(1,1,50,10000);
+
+        Future<Boolean> first = voters.submit(() -> service.submit(vote(1)));
+        assertTrue(writing.await(10,TimeUnit.SECONDS));
+//        the drainer holds the first vote; the second fills the queue
+        Future<Boolean> second = voters.submit(() -> service.submit(vote(2)));
+        awaitQueued(1);
+
+        try {
+            service.submit(vote(3));
+            fail("Expected the vote to be refused");
+        } catch (ServiceUnavailableException ex){
+//            expected: 503
+        }
+
+        release.countDown();
+        assertTrue(first.get(10,TimeUnit.SECONDS));
+        assertTrue(second.get(10,TimeUnit.SECONDS));
+        assertEquals(2,written.size());
+    }
+
+    @Test
+    public void unconfirmedVoteIsAcceptedAndStillWritten() throws Exception {
+        start(10,1,1000,100);
+
+        try {
+            service.submit(vote(1));
+            fail("Expected the vote to be left unconfirmed");
+        } catch (VoteNotConfirmedException ex){
+//            expected: 202
+        }
+
+        release.countDown();
+        verify(voteTallyService,timeout(10000)).increment(1L,100L);
+        assertEquals(1,written.size());
+    }
+
+    @Test
+    public void stopWritesOutTheQueueBeforeTheDrainerEnds() throws Exception {
+        start(10,2,1000,10000);
+
+        Future<Boolean> first = voters.submit(() -> service.submit(vote(1)));
+        assertTrue(writing.await(10,TimeUnit.SECONDS));
+        Future<Boolean> second = voters.submit(() -> service.submit(vote(2)));
+        Future<Boolean> third = voters.submit(() -> service.submit(vote(3)));
+        awaitQueued(2);
+
+        Future<?> stopped = voters.submit(() -> {
+            service.stop();
+            return null;
+        });
+        release.countDown();
+        stopped.get(10,TimeUnit.SECONDS);
+
+        assertTrue(first.get(10,TimeUnit.SECONDS));
+        assertTrue(second.get(10,TimeUnit.SECONDS));
+        assertTrue(third.get(10,TimeUnit.SECONDS));
+        assertEquals(3,written.size());
+
+        try {
+            service.submit(vote(4));
+            fail("Expected a stopped write-behind to refuse votes");
+        } catch (ServiceUnavailableException ex){
+//            expected: 503
+        }
+    }
+
+    @Test
+    public void duplicateVoteIsNotCounted() throws Exception {
+        start(10,1,1000,10000);
+        duplicates = true;
+        release.countDown();
+
+        assertFalse(service.submit(vote(1)));
+        verify(voteTallyService,never()).increment(anyLong(),anyLong());
+        verify(userStatsService,never()).evict(anyLong());
+    }
+
+    @Test
+    public void failedBatchFailsItsVotesAndTheDrainerCarriesOn() throws Exception {
+        start(10,1,1000,10000);
+        failure = new IllegalStateException("Deadlock found when trying to get lock");
+        release.countDown();
+
+        try {
+            service.submit(vote(1));
+            fail("Expected the failed batch to fail the vote");
+        } catch (AppException ex){
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+        assertTrue(service.submit(vote(2)));
+    }
+
+    private void start(int queueCapacity, int batchSize, long acceptTimeoutMs, long commitTimeoutMs){
+        service = new VoteWriteBehindService();
+        ReflectionTestUtils.setField(service,"enabled",true);
+        ReflectionTestUtils.setField(service,"queueCapacity",queueCapacity);
+        ReflectionTestUtils.setField(service,"batchSize",batchSize);
+        ReflectionTestUtils.setField(service,"flushIntervalMs",5L);
+        ReflectionTestUtils.setField(service,"acceptTimeoutMs",acceptTimeoutMs);
+        ReflectionTestUtils.setField(service,"commitTimeoutMs",commitTimeoutMs);
+        ReflectionTestUtils.setField(service,"voteJdbcRepository",voteJdbcRepository);
+        ReflectionTestUtils.setField(service,"voteTallyService",voteTallyService);
+        ReflectionTestUtils.setField(service,"userStatsService",userStatsService);
+        service.start();
+    }
+
+    private void awaitQueued(int size) throws InterruptedException {
+        BlockingQueue<?> queue = (BlockingQueue<?>) ReflectionTestUtils.getField(service,"queue");
+        long deadline = System.nanoTime()+TimeUnit.SECONDS.toNanos(10);
+        while(queue.size() < size){
+            assertTrue("Votes were not queued",System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static VoteRecord vote(long pollId){
+        return new VoteRecord(pollId,7L,pollId*100,Instant.now());
+    }
+}
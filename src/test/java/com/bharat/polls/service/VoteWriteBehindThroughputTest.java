@@ -0,0 +1,167 @@
+package com.bharat.polls.service;
+
+import com.bharat.polls.TestData;
+import com.bharat.polls.model.VoteRecord;
+import com.bharat.polls.repository.VoteJdbcRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Casts the same number of votes one transaction per vote, as batches straight into VoteJdbcRepository, and through
+ * the write-behind queue from concurrent voters, and logs the rate of each. Every run checks that the stored votes
+ * and counts add up, so the numbers are comparable between runs. Raise -Dbenchmark.votes for steadier numbers.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("h2")
+public class VoteWriteBehindThroughputTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(VoteWriteBehindThroughputTest.class);
+
+    private static final long FIRST_ID = 20001;
+    private static final int POLLS = 4;
+    private static final int VOTES = Integer.getInteger("benchmark.votes",2000);
+    // a batch holds at most one vote per waiting caller; Tomcat serves requests from up to 200 threads
+    private static final int VOTERS = 200;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private VoteJdbcRepository voteJdbcRepository;
+
+    @Autowired
+    private VoteCountService voteCountService;
+
+    @Autowired
+    private VoteTallyService voteTallyService;
+
+    @Autowired
+    private UserStatsService userStatsService;
+
+    @Before
+    public void setUp() {
+        TestData.insertUsers(jdbcTemplate,FIRST_ID,VOTES);
+        for(long pollId=FIRST_ID;pollId<FIRST_ID+POLLS;pollId++){
+            TestData.insertPoll(jdbcTemplate,pollId,FIRST_ID,Instant.now(),choiceId(pollId,0),choiceId(pollId,1));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        TestData.deleteRange(jdbcTemplate,FIRST_ID,FIRST_ID+VOTES);
+    }
+
+    @Test
+    public void oneTransactionPerVote() {
+        List<VoteRecord> votes = votes();
+        long start = System.nanoTime();
+        for(VoteRecord vote : votes){
+            assertTrue(voteCountService.insertAndCount(vote));
+        }
+        report("one transaction per vote",start);
+
+        assertStored();
+        assertFalse(voteCountService.insertAndCount(votes.get(0)));
+    }
+
+    @Test
+    public void batchedInserts() {
+        List<VoteRecord> votes = votes();
+        long start = System.nanoTime();
+        for(int from=0;from<votes.size();from+=500){
+            for(boolean inserted : voteJdbcRepository.insertAll(votes.subList(from,Math.min(from+500,votes.size())))){
+                assertTrue(inserted);
+            }
+        }
+        report("batches of 500",start);
+
+        assertStored();
+        assertFalse(voteJdbcRepository.insertAll(votes.subList(0,1))[0]);
+    }
+
+    @Test
+    public void writeBehindFromConcurrentVoters() throws Exception {
+        VoteWriteBehindService writeBehind = new VoteWriteBehindService();
+        ReflectionTestUtils.setField(writeBehind,"enabled",true);
+        ReflectionTestUtils.setField(writeBehind,"queueCapacity",10000);
+        ReflectionTestUtils.setField(writeBehind,"batchSize",500);
+        ReflectionTestUtils.setField(writeBehind,"flushIntervalMs",20L);
+        ReflectionTestUtils.setField(writeBehind,"acceptTimeoutMs",1000L);
+        ReflectionTestUtils.setField(writeBehind,"commitTimeoutMs",30000L);
+        ReflectionTestUtils.setField(writeBehind,"voteJdbcRepository",voteJdbcRepository);
+        ReflectionTestUtils.setField(writeBehind,"voteTallyService",voteTallyService);
+        ReflectionTestUtils.setField(writeBehind,"userStatsService",userStatsService);
+        writeBehind.start();
+
+        List<VoteRecord> votes = votes();
+        ExecutorService voters = Executors.newFixedThreadPool(VOTERS);
+        try {
+            long start = System.nanoTime();
+            List<Future<Boolean>> results = new ArrayList<>(votes.size());
+            votes.forEach(vote -> results.add(voters.submit(() -> writeBehind.submit(vote))));
+            for(Future<Boolean> result : results){
+                assertTrue(result.get());
+            }
+            report("write-behind, "+VOTERS+" voters",start);
+
+            assertStored();
+            assertFalse(writeBehind.submit(votes.get(0)));
+        } finally {
+            voters.shutdownNow();
+            writeBehind.stop();
+        }
+    }
+
+    // every user votes once, spread over the polls and their choices
+    private static List<VoteRecord> votes(){
+        List<VoteRecord> votes = new ArrayList<>(VOTES);
+        Instant now = Instant.now();
+        for(int i=0;i<VOTES;i++){
+            long pollId = FIRST_ID+i%POLLS;
+            votes.add(new VoteRecord(pollId,FIRST_ID+i,choiceId(pollId,i/POLLS%2),now));
+        }
+        return votes;
+    }
+
+    private void assertStored(){
+        assertEquals(VOTES,(int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM votes WHERE user_id BETWEEN ? AND ?",
+                Integer.class,FIRST_ID,FIRST_ID+VOTES-1));
+        assertEquals(VOTES,(long) jdbcTemplate.queryForObject("SELECT SUM(vote_count) FROM choices WHERE poll_id BETWEEN ? AND ?",
+                Long.class,FIRST_ID,FIRST_ID+POLLS-1));
+        assertEquals(VOTES,(long) jdbcTemplate.queryForObject("SELECT SUM(total_votes) FROM polls WHERE id BETWEEN ? AND ?",
+                Long.class,FIRST_ID,FIRST_ID+POLLS-1));
+        assertEquals(VOTES,(long) jdbcTemplate.queryForObject("SELECT SUM(vote_count) FROM user_stats WHERE user_id BETWEEN ? AND ?",
+                Long.class,FIRST_ID,FIRST_ID+VOTES-1));
+    }
+
+    private static long choiceId(long pollId, int index){
+        return pollId*10+index;
+    }
+
+    private static void report(String how, long startNanos){
+        long ms = Math.max(1,(System.nanoTime()-startNanos)/1000000);
+        logger.info("{} votes, {}: {} ms, {} votes/s",VOTES,how,ms,VOTES*1000L/ms);
+    }
+}
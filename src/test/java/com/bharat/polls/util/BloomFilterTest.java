@@ -0,0 +1,76 @@
+package com.bharat.polls.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BloomFilterTest {
+
+    private static final int SIZE = 100000;
+
+    @Test
+    public void neverMissesAStringThatWasPut() {
+        BloomFilter filter = new BloomFilter(SIZE,0.01);
+        for(int i=0;i<SIZE;i++){
+            filter.put("user"+i+"@example.com");
+        }
+        for(int i=0;i<SIZE;i++){
+            assertTrue(filter.mightContain("user"+i+"@example.com"));
+        }
+    }
+
+    @Test
+    public void falsePositiveRateStaysNearItsTarget() {
+        BloomFilter filter = new BloomFilter(SIZE,0.01);
+        for(int i=0;i<SIZE;i++){
+            filter.put("taken"+i);
+        }
+        int falsePositives = 0;
+        for(int i=0;i<SIZE;i++){
+            if(filter.mightContain("free"+i)){
+                falsePositives++;
+            }
+        }
+//        1% expected; twice that would mean broken hashing or bit indexing
+        assertTrue("false positives: "+falsePositives,falsePositives < SIZE*0.02);
+    }
+
+    @Test
+    public void emptyFilterContainsNothing() {
+        BloomFilter filter = new BloomFilter(10,0.01);
+        assertFalse(filter.mightContain(""));
+        assertFalse(filter.mightContain("anything"));
+    }
+
+    @Test
+    public void concurrentPutsAreNotLost() throws Exception {
+        BloomFilter filter = new BloomFilter(SIZE,0.01);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> puts = new ArrayList<>();
+        for(int t=0;t<4;t++){
+            int thread = t;
+            puts.add(executor.submit(() -> {
+                for(int i=thread;i<SIZE;i+=4){
+                    filter.put("name"+i);
+                }
+            }));
+        }
+        for(Future<?> put : puts){
+            put.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(10,TimeUnit.SECONDS);
+
+        for(int i=0;i<SIZE;i++){
+            assertTrue(filter.mightContain("name"+i));
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.bharat.polls.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FingerprintSetTest {
+
+    @Test
+    public void containsExactlyWhatWasAddedWhileGrowing() {
+//        sized far too small, so the table grows several times
+        FingerprintSet set = new FingerprintSet(10);
+        for(int i=0;i<50000;i++){
+            set.add("user"+i);
+        }
+
+        assertEquals(50000,set.size());
+        for(int i=0;i<50000;i++){
+            assertTrue(set.contains("user"+i));
+            assertFalse(set.contains("other"+i));
+        }
+    }
+
+    @Test
+    public void addingAgainDoesNotChangeTheSize() {
+        FingerprintSet set = new FingerprintSet(100);
+        set.add("alice");
+        set.add("alice");
+        set.add("");
+
+        assertEquals(2,set.size());
+        assertTrue(set.contains(""));
+        assertFalse(set.contains("bob"));
+    }
+}
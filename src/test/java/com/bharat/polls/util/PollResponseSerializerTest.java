@@ -0,0 +1,105 @@
+package com.bharat.polls.util;
+
+import com.bharat.polls.payload.ChoiceResponse;
+import com.bharat.polls.payload.PollResponse;
+import com.bharat.polls.payload.UserSummary;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PollResponseSerializerTest {
+
+    private final PollResponseSerializer serializer = new PollResponseSerializer(100);
+
+    @Test
+    public void writesTheSameBytesAsTheBeanSerializer() throws Exception {
+        ObjectMapper plain = mapper();
+        ObjectMapper cached = withSerializer(mapper());
+
+        PollResponse poll = poll();
+        assertSameBytes(plain,cached,poll);
+//        again from the cached fragments, with only the changing fields different
+        poll.getChoices().get(0).setVoteCount(8L);
+        poll.setTotalVotes(11L);
+        poll.setSelectedChoice(null);
+        poll.setExpired(true);
+        assertSameBytes(plain,cached,poll);
+    }
+
+    @Test
+    public void followsTheGeneratorFeaturesOfEachMapper() throws Exception {
+        ObjectMapper plain = mapper();
+        ObjectMapper cached = withSerializer(mapper());
+        ObjectMapper plainAscii = mapper().enable(JsonGenerator.Feature.ESCAPE_NON_ASCII);
+        ObjectMapper cachedAscii = withSerializer(mapper().enable(JsonGenerator.Feature.ESCAPE_NON_ASCII));
+
+        PollResponse poll = poll();
+        assertSameBytes(plain,cached,poll);
+        assertSameBytes(plainAscii,cachedAscii,poll);
+        assertSameBytes(plain,cached,poll);
+    }
+
+    @Test
+    public void rebuildsFragmentsWhenThePollChanges() throws Exception {
+        ObjectMapper plain = mapper();
+        ObjectMapper cached = withSerializer(mapper());
+
+        PollResponse poll = poll();
+        assertSameBytes(plain,cached,poll);
+        poll.getCreatedBy().setName("Renamed");
+        poll.getChoices().remove(1);
+        assertSameBytes(plain,cached,poll);
+    }
+
+    private static void assertSameBytes(ObjectMapper plain, ObjectMapper cached, PollResponse poll) throws Exception {
+        byte[] expected = plain.writeValueAsBytes(poll);
+        byte[] actual = cached.writeValueAsBytes(poll);
+        assertEquals(new String(expected,"UTF-8"),new String(actual,"UTF-8"));
+        assertArrayEquals(expected,actual);
+    }
+
+    private static ObjectMapper mapper() {
+        return new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    private ObjectMapper withSerializer(ObjectMapper mapper) {
+        return mapper.registerModule(new SimpleModule().addSerializer(PollResponse.class,serializer));
+    }
+
+    private static PollResponse poll() {
+        PollResponse poll = new PollResponse();
+        poll.setId(42L);
+        poll.setQuestion("Café or \"tea\"?\n☃");
+        List<ChoiceResponse> choices = new ArrayList<>();
+        choices.add(choice(1L,"Café",3L));
+        choices.add(choice(2L,"Tea \\ chai",0L));
+        poll.setChoices(choices);
+        poll.setCreatedBy(new UserSummary(7L,"zoë","Zoë <Z>"));
+        poll.setCreationDateTime(Instant.parse("2019-06-01T10:15:30.123Z"));
+        poll.setExpirationDateTime(Instant.parse("2019-06-08T10:15:30Z"));
+        poll.setSelectedChoice(1L);
+        poll.setTotalVotes(3L);
+        poll.setExpired(false);
+        return poll;
+    }
+
+    private static ChoiceResponse choice(Long id, String text, Long voteCount) {
+        ChoiceResponse choice = new ChoiceResponse();
+        choice.setId(id);
+        choice.setText(text);
+        choice.setVoteCount(voteCount);
+        return choice;
+    }
+}
@@ -0,0 +1,131 @@
+package com.bharat.polls.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PostingListTest {
+
+    @Test
+    public void readsBackAscendingIdsAcrossBlocks() {
+        PostingList list = new PostingList();
+        TreeMap<Long, Integer> expected = new TreeMap<>();
+        long id = 0;
+        for(int i=0;i<1000;i++){
+//            gaps from 1 up to multi-byte varints, flags cycling through every value
+            id += 1 + (i % 7 == 0 ? 1L << (i % 40) : i % 5);
+            list.add(id,i & 3);
+            expected.put(id,i & 3);
+        }
+
+        assertContents(expected,list);
+    }
+
+    @Test
+    public void mergesOutOfOrderAndRepeatedIds() {
+        Random random = new Random(20);
+        PostingList list = new PostingList();
+        TreeMap<Long, Integer> expected = new TreeMap<>();
+        for(int i=0;i<5000;i++){
+            long id = 1 + random.nextInt(3000);
+            int flags = 1 << random.nextInt(PostingList.FLAG_BITS);
+            list.add(id,flags);
+            expected.merge(id,flags,(a,b) -> a | b);
+        }
+
+        assertContents(expected,list);
+    }
+
+    @Test
+    public void repeatedIdOrsItsFlags() {
+        PostingList list = new PostingList();
+        list.add(5,1);
+        list.add(9,0);
+        list.add(5,2);
+
+        PostingList.Cursor cursor = list.cursor();
+        assertTrue(cursor.next());
+        assertEquals(5,cursor.getId());
+        assertEquals(3,cursor.getFlags());
+        assertTrue(cursor.next());
+        assertEquals(9,cursor.getId());
+        assertFalse(cursor.next());
+        assertEquals(2,list.size());
+    }
+
+    @Test
+    public void advanceFindsTheFirstIdAtLeastTheTarget() {
+        Random random = new Random(21);
+        PostingList list = new PostingList();
+        TreeMap<Long, Integer> expected = new TreeMap<>();
+        for(long id=3;id<20000;id+=1+random.nextInt(20)){
+            list.add(id,0);
+            expected.put(id,0);
+        }
+
+        for(int run=0;run<200;run++){
+            PostingList.Cursor cursor = list.cursor();
+            long target = random.nextInt(50);
+            while(true){
+                Long ceiling = expected.ceilingKey(target);
+                if(ceiling == null){
+                    assertFalse(cursor.advance(target));
+                    break;
+                }
+                assertTrue(cursor.advance(target));
+                assertEquals(ceiling.longValue(),cursor.getId());
+//                small steps stay in the block, large ones skip blocks
+                target = cursor.getId() + (random.nextBoolean() ? random.nextInt(3) : random.nextInt(5000));
+            }
+        }
+    }
+
+    @Test
+    public void advanceOnAnEmptyListFindsNothing() {
+        assertFalse(new PostingList().cursor().advance(1));
+    }
+
+    @Test
+    public void keepsWorkingAfterTrimAndAddAll() {
+        PostingList first = new PostingList();
+        PostingList second = new PostingList();
+        TreeMap<Long, Integer> expected = new TreeMap<>();
+        for(long id=1;id<=300;id++){
+            first.add(id,1);
+            second.add(id+300,2);
+            expected.put(id,1);
+            expected.put(id+300,2);
+        }
+        first.trim();
+        first.addAll(second);
+        first.add(150,2);
+        expected.put(150L,3);
+
+        assertContents(expected,first);
+    }
+
+    private static void assertContents(TreeMap<Long, Integer> expected, PostingList list) {
+        List<Long> ids = new ArrayList<>();
+        List<Integer> flags = new ArrayList<>();
+        PostingList.Cursor cursor = list.cursor();
+        while(cursor.next()){
+            ids.add(cursor.getId());
+            flags.add(cursor.getFlags());
+        }
+
+        assertEquals(new ArrayList<>(expected.keySet()),ids);
+        assertEquals(new ArrayList<>(expected.values()),flags);
+        assertEquals(expected.size(),list.size());
+        for(Map.Entry<Long, Integer> entry : expected.entrySet()){
+            assertTrue(list.cursor().advance(entry.getKey()));
+        }
+    }
+}